@@ -3,9 +3,11 @@ package org.hysync.database;
 import com.hypixel.hytale.logger.HytaleLogger;
 import com.hypixel.hytale.server.core.plugin.JavaPlugin;
 import com.hypixel.hytale.server.core.plugin.JavaPluginInit;
+import org.hysync.database.api.AsyncInventorySyncService;
 import org.hysync.database.api.InventorySyncService;
+import org.hysync.database.api.PrefetchedPlayer;
 import org.hysync.database.commands.MigrateInventoryCommand;
-import org.hysync.database.config.DatabaseConfig;
+import org.hysync.database.config.HysyncDataConfig;
 import org.hysync.database.config.PluginConfigLoader;
 import org.hysync.database.core.DatabasePlugin;
 
@@ -14,6 +16,7 @@ import javax.annotation.Nullable;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
 
 public class HysyncDatabase extends JavaPlugin {
     private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
@@ -38,6 +41,21 @@ public class HysyncDatabase extends JavaPlugin {
         return databasePlugin != null ? databasePlugin.getInventorySyncService() : null;
     }
 
+    /** Non-blocking inventory API for join/quit handlers. Returns null if DB is not available. */
+    @Nullable
+    public AsyncInventorySyncService getAsyncInventorySyncService() {
+        return databasePlugin != null ? databasePlugin.getAsyncInventorySyncService() : null;
+    }
+
+    /**
+     * Load everything the join path needs for a player in one query and warm the caches with it.
+     * Call on connect. Returns null if DB is not available.
+     */
+    @Nullable
+    public CompletableFuture<PrefetchedPlayer> prefetchPlayer(String playerUuid) {
+        return databasePlugin != null ? databasePlugin.prefetchPlayer(playerUuid) : null;
+    }
+
     /** Cross-server stash sync API. Returns null if DB is not available. */
     @Nullable
     public org.hysync.database.api.StashSyncService getStashSyncService() {
@@ -50,6 +68,12 @@ public class HysyncDatabase extends JavaPlugin {
         return databasePlugin != null ? databasePlugin.getVoteSyncService() : null;
     }
 
+    /** Item search across all inventories and stashes. Returns null if DB is not available. */
+    @Nullable
+    public org.hysync.database.api.ItemSearchService getItemSearchService() {
+        return databasePlugin != null ? databasePlugin.getItemSearchService() : null;
+    }
+
     @Override
     public void setup() {
         LOGGER.atInfo().log("Setting up HysyncDatabase plugin");
@@ -65,9 +89,9 @@ public class HysyncDatabase extends JavaPlugin {
         Path basePath = Paths.get(System.getProperty("user.dir", "."));
         PluginConfigLoader configLoader = new PluginConfigLoader(basePath);
 
-        DatabaseConfig dbConfig;
+        HysyncDataConfig config;
         try {
-            dbConfig = configLoader.load();
+            config = configLoader.loadConfig();
             LOGGER.atInfo().log("Loaded config from " + configLoader.getConfigPath());
         } catch (IOException e) {
             LOGGER.atSevere().withCause(e).log("Failed to load mods/HysyncData/config.json; using defaults");
@@ -75,7 +99,7 @@ public class HysyncDatabase extends JavaPlugin {
         }
 
         try {
-            databasePlugin = new DatabasePlugin(dbConfig);
+            databasePlugin = new DatabasePlugin(config);
             LOGGER.atInfo().log("Database connection pool started successfully");
             getCommandRegistry().registerCommand(new MigrateInventoryCommand(this));
             getCommandRegistry().registerCommand(new org.hysync.database.commands.MigrateStashCommand(this));
@@ -83,8 +107,8 @@ public class HysyncDatabase extends JavaPlugin {
             getEventRegistry().registerGlobal(
                     com.hypixel.hytale.server.core.event.events.player.PlayerDisconnectEvent.class, event -> {
                         String playerUuid = event.getPlayerRef().getUuid().toString();
-                        if (databasePlugin != null && databasePlugin.getStashSyncService() != null) {
-                            databasePlugin.getStashSyncService().unloadCache(playerUuid);
+                        if (databasePlugin != null) {
+                            databasePlugin.unloadPlayer(playerUuid);
                         }
                     });
         } catch (RuntimeException e) {
@@ -0,0 +1,66 @@
+package org.hysync.database.api;
+
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking variant of {@link InventorySyncService}. Every call runs on the plugin's
+ * database executor and returns immediately, so world/tick threads never wait on PostgreSQL.
+ * <p>
+ * Semantics match the synchronous methods one-to-one; only the calling thread differs.
+ * Futures complete exceptionally only if the task could not be scheduled (e.g. during shutdown).
+ */
+public interface AsyncInventorySyncService {
+
+    /** @see InventorySyncService#getInventory(String) */
+    CompletableFuture<Optional<String>> getInventory(String playerUuid);
+
+    /** @see InventorySyncService#setInventory(String, String, String, int) */
+    CompletableFuture<Boolean> setInventory(String playerUuid, @Nullable String displayName, String inventoryJson, int inventoryVersion);
+
+    /** @see InventorySyncService#getVersionedInventory(String) */
+    CompletableFuture<Optional<VersionedInventory>> getVersionedInventory(String playerUuid);
+
+    /** @see InventorySyncService#setInventory(String, String, String, int, long) */
+    CompletableFuture<OptionalLong> setInventory(String playerUuid, @Nullable String displayName, String inventoryJson,
+                                                 int inventoryVersion, long expectedRevision);
+
+    /** @see InventorySyncService#savePlayerState(String, String, String, int, String) */
+    CompletableFuture<Boolean> savePlayerState(String playerUuid, @Nullable String displayName, String inventoryJson,
+                                               int inventoryVersion, @Nullable String hotbarManagerJson);
+
+    /** @see InventorySyncService#updateContainers(String, Map) */
+    CompletableFuture<Boolean> updateContainers(String playerUuid, Map<String, String> containers);
+
+    /** @see InventorySyncService#setInventories(Collection) */
+    CompletableFuture<Boolean> setInventories(Collection<InventorySnapshot> snapshots);
+
+    /** @see InventorySyncService#getHotbarManager(String) */
+    CompletableFuture<Optional<String>> getHotbarManager(String playerUuid);
+
+    /** @see InventorySyncService#setHotbarManager(String, String) */
+    CompletableFuture<Boolean> setHotbarManager(String playerUuid, String hotbarManagerJson);
+
+    /** @see InventorySyncService#getPlayer(String) */
+    CompletableFuture<Optional<InventorySyncService.PlayerInfo>> getPlayer(String playerUuid);
+
+    /** @see InventorySyncService#getCurrentServerId(String) */
+    CompletableFuture<Optional<String>> getCurrentServerId(String playerUuid);
+
+    /** @see InventorySyncService#claimSession(String, String) */
+    CompletableFuture<Boolean> claimSession(String playerUuid, String serverId);
+
+    /** @see InventorySyncService#releaseSession(String, String) */
+    CompletableFuture<Void> releaseSession(String playerUuid, String serverId);
+
+    /** @see InventorySyncService#getOnlinePlayers(String) */
+    CompletableFuture<Set<String>> getOnlinePlayers(String serverId);
+
+    /** @see InventorySyncService#getOnlineCounts() */
+    CompletableFuture<Map<String, Integer>> getOnlineCounts();
+}
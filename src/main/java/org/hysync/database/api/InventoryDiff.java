@@ -0,0 +1,81 @@
+package org.hysync.database.api;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Client-side diff of two Inventory JSON documents at the top level (Storage, Armor, HotBar,
+ * Utility, Backpack, Tool, ActiveHotbarSlot, ...). Keep the JSON from the last successful save,
+ * diff it against the current inventory and pass {@link #containers()} to
+ * {@link InventorySyncService#updateContainers} so only the changed containers are sent.
+ */
+public final class InventoryDiff {
+
+    private static final Gson GSON = new Gson();
+
+    private final Map<String, String> containers;
+
+    private InventoryDiff(Map<String, String> containers) {
+        this.containers = Collections.unmodifiableMap(containers);
+    }
+
+    /**
+     * Compare two Inventory JSON documents.
+     *
+     * @param previousJson JSON from the last save, or null if unknown (everything counts as changed)
+     * @param currentJson  current Inventory JSON
+     * @return diff of top-level keys
+     */
+    public static InventoryDiff between(@Nullable String previousJson, String currentJson) {
+        JsonObject previous = previousJson != null ? JsonParser.parseString(previousJson).getAsJsonObject() : new JsonObject();
+        JsonObject current = JsonParser.parseString(currentJson).getAsJsonObject();
+        Map<String, String> changed = new LinkedHashMap<>();
+        for (Map.Entry<String, JsonElement> entry : current.entrySet()) {
+            JsonElement before = previous.get(entry.getKey());
+            if (before == null || !before.equals(entry.getValue())) {
+                changed.put(entry.getKey(), GSON.toJson(entry.getValue()));
+            }
+        }
+        for (String key : previous.keySet()) {
+            if (!current.has(key)) {
+                changed.put(key, null);
+            }
+        }
+        return new InventoryDiff(changed);
+    }
+
+    /**
+     * Apply a container update to a full Inventory JSON document, the same way the database does.
+     *
+     * @param inventoryJson full Inventory JSON
+     * @param containers    top-level key to JSON value; a null value removes the key
+     * @return updated Inventory JSON
+     */
+    public static String apply(String inventoryJson, Map<String, String> containers) {
+        JsonObject inventory = JsonParser.parseString(inventoryJson).getAsJsonObject();
+        for (Map.Entry<String, String> entry : containers.entrySet()) {
+            if (entry.getValue() == null) {
+                inventory.remove(entry.getKey());
+            } else {
+                inventory.add(entry.getKey(), JsonParser.parseString(entry.getValue()));
+            }
+        }
+        return GSON.toJson(inventory);
+    }
+
+    /** Changed top-level keys and their new JSON; a null value means the key was removed. */
+    public Map<String, String> containers() {
+        return containers;
+    }
+
+    public boolean isEmpty() {
+        return containers.isEmpty();
+    }
+}
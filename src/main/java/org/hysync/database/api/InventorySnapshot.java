@@ -0,0 +1,26 @@
+package org.hysync.database.api;
+
+import javax.annotation.Nullable;
+import java.util.Objects;
+
+/**
+ * One player's inventory state for batch saves ({@link InventorySyncService#setInventories}).
+ *
+ * @param playerUuid        player UUID (text)
+ * @param displayName       optional display name to upsert in players
+ * @param inventoryJson     full Inventory JSON
+ * @param inventoryVersion  version number (e.g. 4)
+ * @param hotbarManagerJson optional HotbarManager JSON; null leaves the stored value unchanged
+ */
+public record InventorySnapshot(String playerUuid, @Nullable String displayName, String inventoryJson,
+                                int inventoryVersion, @Nullable String hotbarManagerJson) {
+
+    public InventorySnapshot {
+        Objects.requireNonNull(playerUuid, "playerUuid");
+        Objects.requireNonNull(inventoryJson, "inventoryJson");
+    }
+
+    public InventorySnapshot(String playerUuid, @Nullable String displayName, String inventoryJson, int inventoryVersion) {
+        this(playerUuid, displayName, inventoryJson, inventoryVersion, null);
+    }
+}
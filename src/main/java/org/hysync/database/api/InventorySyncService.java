@@ -1,7 +1,11 @@
 package org.hysync.database.api;
 
 import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.OptionalLong;
 
 /**
  * API for cross-server inventory sync. Other plugins can use this to get/set
@@ -30,6 +34,63 @@ public interface InventorySyncService {
      */
     boolean setInventory(String playerUuid, @Nullable String displayName, String inventoryJson, int inventoryVersion);
 
+    /**
+     * Get the Inventory JSON together with its row revision, for a later conditional
+     * {@link #setInventory(String, String, String, int, long)}. Requires migration V8.
+     *
+     * @param playerUuid player UUID (text)
+     * @return inventory and revision, or empty if not found, on error or without V8
+     */
+    Optional<VersionedInventory> getVersionedInventory(String playerUuid);
+
+    /**
+     * Save full Inventory JSON only if the stored row is still at {@code expectedRevision}
+     * (compare-and-set). Fails fast instead of overwriting a newer inventory, e.g. a late save from
+     * the previous server after a fast server switch. Requires migration V8.
+     *
+     * @param playerUuid       player UUID (text)
+     * @param displayName      optional display name to upsert in players
+     * @param inventoryJson    full Inventory JSON
+     * @param inventoryVersion version number (e.g. 4)
+     * @param expectedRevision revision from {@link #getVersionedInventory}, or 0 if the player must not have a stored inventory yet
+     * @return the new revision, or empty on conflict (re-read and retry), on error or without V8
+     */
+    OptionalLong setInventory(String playerUuid, @Nullable String displayName, String inventoryJson, int inventoryVersion,
+                              long expectedRevision);
+
+    /**
+     * Save the players row, inventory and (optionally) hotbar manager in a single statement and
+     * round trip. Preferred on quit over {@link #setInventory} followed by {@link #setHotbarManager}.
+     *
+     * @param playerUuid        player UUID (text)
+     * @param displayName       optional display name to upsert in players
+     * @param inventoryJson     full Inventory JSON
+     * @param inventoryVersion  version number (e.g. 4)
+     * @param hotbarManagerJson HotbarManager JSON, or null to keep the stored value
+     * @return true if saved, false on error
+     */
+    boolean savePlayerState(String playerUuid, @Nullable String displayName, String inventoryJson, int inventoryVersion,
+                            @Nullable String hotbarManagerJson);
+
+    /**
+     * Update only some top-level containers of the stored Inventory JSON (e.g. just HotBar) instead of
+     * rewriting the whole document. Use {@link InventoryDiff} to work out what changed since the last save.
+     *
+     * @param playerUuid player UUID (text)
+     * @param containers top-level key (Storage, Armor, HotBar, ...) to its new JSON; a null value removes the key
+     * @return true if updated, false if the player has no stored inventory yet (use {@link #setInventory}) or on error
+     */
+    boolean updateContainers(String playerUuid, Map<String, String> containers);
+
+    /**
+     * Save many players at once (server-wide autosave, migrations). All rows are written in one
+     * transaction using batched statements; if a player appears more than once, the last snapshot wins.
+     *
+     * @param snapshots players to save (players row, inventory and optional hotbar manager)
+     * @return true if every snapshot was saved, false on error (nothing is saved)
+     */
+    boolean setInventories(Collection<InventorySnapshot> snapshots);
+
     /**
      * Get HotbarManager JSON (SavedHotbars, CurrentHotbar) if stored.
      *
@@ -82,6 +143,23 @@ public interface InventorySyncService {
      */
     void releaseSession(String playerUuid, String serverId);
 
+    /**
+     * Players whose session is on the given server. Served from memory when the session directory
+     * is active (migration V9), so it is cheap enough for player lists and routing.
+     *
+     * @param serverId server id (e.g. "smp")
+     * @return player UUIDs, empty if none or on error
+     */
+    Set<String> getOnlinePlayers(String serverId);
+
+    /**
+     * Number of sessions per server, for load balancing. Served from memory when the session
+     * directory is active (migration V9).
+     *
+     * @return server id to online count; servers without sessions are absent
+     */
+    Map<String, Integer> getOnlineCounts();
+
     /**
      * Minimal player info for API consumers.
      */
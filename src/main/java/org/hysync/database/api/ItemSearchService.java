@@ -0,0 +1,34 @@
+package org.hysync.database.api;
+
+import javax.annotation.Nullable;
+import java.util.stream.Stream;
+
+/**
+ * Admin lookups over every stored inventory and stash (dupe checks, economy audits).
+ * Requires migration V11 for the indexes; without it every lookup scans all rows.
+ */
+public interface ItemSearchService {
+
+    /**
+     * Find who holds an item, in inventories and stashes. Rows are streamed from a database
+     * cursor, so large results are never held in memory; the stream keeps a pooled connection
+     * until it is closed, so always use try-with-resources. Compressed inventories are not searched.
+     *
+     * @param itemId Item type id (e.g. {@code Rock_Crystal_Green_Medium})
+     * @param limit  Maximum number of holders returned
+     * @return holders, or an empty stream on database error
+     */
+    Stream<ItemHolder> findHolders(String itemId, int limit);
+
+    enum Location {
+        INVENTORY,
+        STASH
+    }
+
+    /**
+     * One inventory or stash containing the item. {@code stashName} is null for inventories;
+     * {@code quantity} sums the Quantity of all matching stacks in it (1 per stack without one).
+     */
+    record ItemHolder(String playerUuid, Location location, @Nullable String stashName, long quantity) {
+    }
+}
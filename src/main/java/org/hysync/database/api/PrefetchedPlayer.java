@@ -0,0 +1,29 @@
+package org.hysync.database.api;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Everything the join path needs for one player, loaded in a single query by
+ * {@code HysyncDatabase.prefetchPlayer(uuid)}. The inventory and stash parts are also put into the
+ * service caches, so the usual {@link InventorySyncService} / {@link StashSyncService} getters
+ * answer from memory afterwards.
+ *
+ * @param playerUuid      player UUID (text)
+ * @param player          players row, empty for a first join
+ * @param inventory       Inventory JSON, empty if none stored
+ * @param hotbarManager   HotbarManager JSON, empty if none stored
+ * @param currentServerId server currently holding the session, empty if none
+ * @param stashes         summaries of all stashes (no items; {@link StashSyncService#getStash} loads them)
+ * @param maxStashes      stash limit (0 if no settings row)
+ * @param totalVotes      total votes across all platforms
+ */
+public record PrefetchedPlayer(String playerUuid,
+                               Optional<InventorySyncService.PlayerInfo> player,
+                               Optional<String> inventory,
+                               Optional<String> hotbarManager,
+                               Optional<String> currentServerId,
+                               List<StashSyncService.StashSummary> stashes,
+                               int maxStashes,
+                               int totalVotes) {
+}
@@ -1,7 +1,10 @@
 package org.hysync.database.api;
 
+import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalLong;
 
 /**
  * API for cross-server Stash sync.
@@ -25,6 +28,15 @@ public interface StashSyncService {
      */
     List<StashModel> getStashes(String playerUuid);
 
+    /**
+     * List a player's stashes without their items, e.g. for the stash menu. Item payloads are
+     * never transferred; load one with {@link #getStash} when the stash is opened.
+     *
+     * @param playerUuid Player UUID
+     * @return Summaries of all stashes
+     */
+    List<StashSummary> getStashSummaries(String playerUuid);
+
     /**
      * Save a stash (create or update).
      * 
@@ -36,6 +48,62 @@ public interface StashSyncService {
      */
     boolean saveStash(String playerUuid, String name, int size, String itemsJson);
 
+    /**
+     * Save a stash only if the stored row is still at {@code expectedRevision} (compare-and-set).
+     * Requires migration V8.
+     *
+     * @param playerUuid       Player UUID
+     * @param name             Stash name
+     * @param size             Stash size
+     * @param itemsJson        Items in JSON format
+     * @param expectedRevision {@link StashModel#revision()} the change is based on, or 0 to create a new stash only
+     * @return the new revision, or empty on conflict (re-read with getStash and retry) or error
+     */
+    OptionalLong saveStash(String playerUuid, String name, int size, String itemsJson, long expectedRevision);
+
+    /**
+     * Put one item into a slot, without sending the rest of the stash. Requires migration V10
+     * (without it the whole stash is read and saved).
+     *
+     * @param playerUuid Player UUID
+     * @param stashName  Stash name
+     * @param slot       Slot index, below the stash size
+     * @param itemJson   Item in JSON format
+     * @return true if successful; false if the stash does not exist or the slot is out of range
+     */
+    boolean setSlot(String playerUuid, String stashName, int slot, String itemJson);
+
+    /**
+     * Empty one slot. See {@link #setSlot}.
+     *
+     * @param playerUuid Player UUID
+     * @param stashName  Stash name
+     * @param slot       Slot index, below the stash size
+     * @return true if successful
+     */
+    boolean clearSlot(String playerUuid, String stashName, int slot);
+
+    /**
+     * Swap the items of two slots (either may be empty). See {@link #setSlot}.
+     *
+     * @param playerUuid Player UUID
+     * @param stashName  Stash name
+     * @param first      Slot index, below the stash size
+     * @param second     Slot index, below the stash size
+     * @return true if successful
+     */
+    boolean swapSlots(String playerUuid, String stashName, int first, int second);
+
+    /**
+     * Change several slots in one write. See {@link #setSlot}.
+     *
+     * @param playerUuid Player UUID
+     * @param stashName  Stash name
+     * @param changes    Slot index to item JSON; a null value empties the slot
+     * @return true if successful
+     */
+    boolean applySlotDelta(String playerUuid, String stashName, Map<Integer, String> changes);
+
     /**
      * Delete a stash.
      * 
@@ -73,15 +141,48 @@ public interface StashSyncService {
     boolean setMaxStashes(String playerUuid, int maxStashes);
 
     /**
-     * Unload local cache for a player (e.g. on disconnect).
+     * Unload local cache for a player (e.g. on disconnect). Blocks while the player's dirty
+     * stashes are written (write-behind).
      * 
      * @param playerUuid Player UUID
      */
     void unloadCache(String playerUuid);
 
     /**
-     * Simple Stash Model record.
+     * Check this server's cached stashes of a player against the database, e.g. on join when the
+     * player may have changed them elsewhere since. One query lists every stash's revision; cached
+     * items still at that revision are kept and only changed stashes are loaded again. Without
+     * migration V8 every cached stash is reloaded.
+     *
+     * @param playerUuid Player UUID
+     * @return false on database error (the player's cache is dropped instead)
      */
-    record StashModel(String ownerUuid, String name, int size, String itemsJson) {
+    boolean revalidateCache(String playerUuid);
+
+    /**
+     * Write this player's buffered stash saves now, e.g. when a stash UI is closed. Only does
+     * work with {@code stashes.writeBehind} enabled.
+     *
+     * @param playerUuid Player UUID
+     * @return false if some saves could not be written (they stay buffered)
+     */
+    boolean flushStashes(String playerUuid);
+
+    /**
+     * Stash metadata without items. {@code itemCount} is the number of non-null entries in the
+     * items document; {@code revision} is 0 before migration V8.
+     */
+    record StashSummary(String name, int size, Instant updatedAt, int itemCount, long revision) {
+    }
+
+    /**
+     * Simple Stash Model record. {@code revision} is the row revision it was read or written at
+     * (0 if unknown or before migration V8).
+     */
+    record StashModel(String ownerUuid, String name, int size, String itemsJson, long revision) {
+
+        public StashModel(String ownerUuid, String name, int size, String itemsJson) {
+            this(ownerUuid, name, size, itemsJson, 0);
+        }
     }
 }
@@ -0,0 +1,18 @@
+package org.hysync.database.api;
+
+import java.util.Objects;
+
+/**
+ * Inventory JSON together with the row revision it was read at (see migration V8). Pass the
+ * revision to {@link InventorySyncService#setInventory(String, String, String, int, long)} so the
+ * write only applies if nobody else has saved the inventory in between.
+ *
+ * @param inventoryJson full Inventory JSON
+ * @param revision      row revision; incremented by the database on every update
+ */
+public record VersionedInventory(String inventoryJson, long revision) {
+
+    public VersionedInventory {
+        Objects.requireNonNull(inventoryJson, "inventoryJson");
+    }
+}
@@ -1,29 +1,98 @@
 package org.hysync.database.api;
 
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 public interface VoteSyncService {
     /**
      * Add votes for a player on a specific platform.
      * 
      * @param playerUuid UUID of the player
-     * @param platform   Platform name (e.g., "TopG")
+     * @param platform   Platform name (e.g., "TopG"); must not be blank
      * @param count      Number of votes to add
      * @return New total votes across all platforms (useful for milestone check), or
-     *         -1 on error.
+     *         -1 on error or a blank platform.
      */
     int addVote(String playerUuid, String platform, int count);
 
+    /**
+     * Like {@link #addVote}, but also returns the total just before this vote, so a milestone
+     * check ({@link VoteResult#crossed}) fires for exactly one vote even when votes for the same
+     * player arrive concurrently on several servers (requires migration V12).
+     *
+     * @return previous and new total, or empty on error or a blank platform
+     */
+    Optional<VoteResult> submitVote(String playerUuid, String platform, int count);
+
+    /**
+     * Queue a vote for a batched write, for bursts where votes arrive faster than one statement
+     * each. Returns at once; the future completes with the same totals {@link #submitVote} would
+     * return, or fails if the platform is blank, the queue is full or the write failed.
+     */
+    CompletableFuture<VoteResult> queueVote(String playerUuid, String platform, int count);
+
     /**
      * Get total votes for a player across all platforms.
      */
     int getTotalVotes(String playerUuid);
 
+    /**
+     * Get votes for a player on one platform.
+     */
+    int getVotes(String playerUuid, String platform);
+
+    /**
+     * Get votes for a player in the current week or month (all platforms).
+     */
+    int getVotes(String playerUuid, VoteWindow window);
+
     /**
      * Get top voters.
      */
     List<TopVoter> getTopVoters(int limit);
 
+    /**
+     * Get top voters of the current week or month (requires migration V14 to avoid scanning history).
+     */
+    List<TopVoter> getTopVoters(VoteWindow window, int limit);
+
+    /**
+     * Position of a player among all voters: 1 plus the number of players with more votes, so
+     * ties share a rank.
+     *
+     * @return the rank, 0 if the player has no votes, or -1 on error
+     */
+    int getRank(String playerUuid);
+
+    /**
+     * Position of a player among the voters of the current week or month (same ranking as
+     * {@link #getRank(String)}).
+     *
+     * @return the rank, 0 if the player has no votes in the window, or -1 on error
+     */
+    int getRank(String playerUuid, VoteWindow window);
+
+    /**
+     * Calendar window of a leaderboard. Weeks start on Monday, months on the 1st, in the database's time zone.
+     */
+    enum VoteWindow {
+        WEEK,
+        MONTH,
+        ALL_TIME
+    }
+
+    /**
+     * Overall totals right before and right after one vote.
+     */
+    record VoteResult(int previousTotal, int total) {
+
+        /** True if this vote took the total from below {@code milestone} to at least {@code milestone}. */
+        public boolean crossed(int milestone) {
+            return previousTotal < milestone && total >= milestone;
+        }
+    }
+
     class TopVoter {
         public final String name;
         public final int votes;
@@ -19,7 +19,8 @@ public class DatabaseConfig {
 
     public String getJdbcUrl() {
         return String.format(
-            "jdbc:postgresql://%s:%d/%s?sslmode=%s",
+            // reWriteBatchedInserts turns batched INSERTs into multi-row INSERTs (one round trip)
+            "jdbc:postgresql://%s:%d/%s?sslmode=%s&reWriteBatchedInserts=true",
             host,
             port,
             database,
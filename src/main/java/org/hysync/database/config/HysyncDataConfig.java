@@ -10,6 +10,18 @@ public class HysyncDataConfig {
     @SerializedName("database")
     private DatabaseSection database = new DatabaseSection();
 
+    @SerializedName("inventory")
+    private InventorySection inventory = new InventorySection();
+
+    @SerializedName("sessions")
+    private SessionSection sessions = new SessionSection();
+
+    @SerializedName("stashes")
+    private StashSection stashes = new StashSection();
+
+    @SerializedName("votes")
+    private VoteSection votes = new VoteSection();
+
     public DatabaseSection getDatabase() {
         return database;
     }
@@ -18,6 +30,38 @@ public class HysyncDataConfig {
         this.database = database;
     }
 
+    public InventorySection getInventory() {
+        return inventory != null ? inventory : new InventorySection();
+    }
+
+    public void setInventory(InventorySection inventory) {
+        this.inventory = inventory;
+    }
+
+    public SessionSection getSessions() {
+        return sessions != null ? sessions : new SessionSection();
+    }
+
+    public void setSessions(SessionSection sessions) {
+        this.sessions = sessions;
+    }
+
+    public StashSection getStashes() {
+        return stashes != null ? stashes : new StashSection();
+    }
+
+    public void setStashes(StashSection stashes) {
+        this.stashes = stashes;
+    }
+
+    public VoteSection getVotes() {
+        return votes != null ? votes : new VoteSection();
+    }
+
+    public void setVotes(VoteSection votes) {
+        this.votes = votes;
+    }
+
     /** Database credentials block in config.json */
     public static class DatabaseSection {
         private String host = "localhost";
@@ -42,6 +86,93 @@ public class HysyncDataConfig {
         public void setUseSSL(boolean useSSL) { this.useSSL = useSSL; }
     }
 
+    /** Inventory sync tuning block in config.json */
+    public static class InventorySection {
+        /** Buffer setInventory/setHotbarManager and write only the latest snapshot per player. */
+        private boolean writeBehind = false;
+        private int flushIntervalSeconds = 5;
+        /** "json" (plain JSONB) or "deflate" (compressed blob, needs migration V5). */
+        private String storageFormat = "json";
+        /** Max players kept by the read cache (invalidated via LISTEN/NOTIFY, needs V6); 0 disables it. */
+        private int cacheSize = 1000;
+
+        public boolean isWriteBehind() { return writeBehind; }
+        public void setWriteBehind(boolean writeBehind) { this.writeBehind = writeBehind; }
+        public int getFlushIntervalSeconds() { return flushIntervalSeconds; }
+        public void setFlushIntervalSeconds(int flushIntervalSeconds) { this.flushIntervalSeconds = flushIntervalSeconds; }
+        public String getStorageFormat() { return storageFormat; }
+        public void setStorageFormat(String storageFormat) { this.storageFormat = storageFormat; }
+        public boolean isCompressed() { return "deflate".equalsIgnoreCase(storageFormat); }
+        public int getCacheSize() { return cacheSize; }
+        public void setCacheSize(int cacheSize) { this.cacheSize = cacheSize; }
+    }
+
+    /** Single-session (player_sessions) tuning block in config.json */
+    public static class SessionSection {
+        /**
+         * Seconds after the last renewal at which another server may take over a session (e.g. after a
+         * crash). 0 (default) keeps sessions until released. Must be several times heartbeatSeconds,
+         * and only enable it once every server runs a build that heartbeats.
+         */
+        private int leaseSeconds = 0;
+        /** How often this server renews all of its sessions in one statement; 0 disables the heartbeat. */
+        private int heartbeatSeconds = 15;
+        /** How often expired sessions are deleted (only when leaseSeconds > 0); 0 disables the reaper. */
+        private int reapIntervalSeconds = 60;
+        /** Keep player_sessions in memory for getCurrentServerId / online lists (needs migration V9). */
+        private boolean directory = true;
+
+        public int getLeaseSeconds() { return leaseSeconds; }
+        public void setLeaseSeconds(int leaseSeconds) { this.leaseSeconds = leaseSeconds; }
+        public int getHeartbeatSeconds() { return heartbeatSeconds; }
+        public void setHeartbeatSeconds(int heartbeatSeconds) { this.heartbeatSeconds = heartbeatSeconds; }
+        public int getReapIntervalSeconds() { return reapIntervalSeconds; }
+        public void setReapIntervalSeconds(int reapIntervalSeconds) { this.reapIntervalSeconds = reapIntervalSeconds; }
+        public boolean isDirectory() { return directory; }
+        public void setDirectory(boolean directory) { this.directory = directory; }
+    }
+
+    /** Stash sync tuning block in config.json */
+    public static class StashSection {
+        /** Max stashes kept in memory across all players (evicted by frequency and recency). */
+        private int cacheSize = 10_000;
+        /** Drop a player's cached stashes after this many minutes without access; 0 = never. */
+        private int cacheExpireMinutes = 30;
+        /** Remember "no such stash" / "no settings row" lookups this many seconds; 0 disables. */
+        private int negativeCacheSeconds = 10;
+        /** Buffer saveStash and write dirty stashes in one batch per flush. */
+        private boolean writeBehind = false;
+        private int flushIntervalSeconds = 5;
+
+        public int getCacheSize() { return cacheSize; }
+        public void setCacheSize(int cacheSize) { this.cacheSize = cacheSize; }
+        public int getCacheExpireMinutes() { return cacheExpireMinutes; }
+        public void setCacheExpireMinutes(int cacheExpireMinutes) { this.cacheExpireMinutes = cacheExpireMinutes; }
+        public int getNegativeCacheSeconds() { return negativeCacheSeconds; }
+        public void setNegativeCacheSeconds(int negativeCacheSeconds) { this.negativeCacheSeconds = negativeCacheSeconds; }
+        public boolean isWriteBehind() { return writeBehind; }
+        public void setWriteBehind(boolean writeBehind) { this.writeBehind = writeBehind; }
+        public int getFlushIntervalSeconds() { return flushIntervalSeconds; }
+        public void setFlushIntervalSeconds(int flushIntervalSeconds) { this.flushIntervalSeconds = flushIntervalSeconds; }
+    }
+
+    /** Vote sync tuning block in config.json */
+    public static class VoteSection {
+        /** Top voters kept in memory for getTopVoters (needs migrations V12 and V13); 0 disables it. */
+        private int leaderboardSize = 100;
+        /** Most votes written per statement by queueVote. */
+        private int ingestBatchSize = 500;
+        /** Longest a queued vote waits for others to join its batch. */
+        private int ingestDelayMillis = 20;
+
+        public int getLeaderboardSize() { return leaderboardSize; }
+        public void setLeaderboardSize(int leaderboardSize) { this.leaderboardSize = leaderboardSize; }
+        public int getIngestBatchSize() { return ingestBatchSize; }
+        public void setIngestBatchSize(int ingestBatchSize) { this.ingestBatchSize = ingestBatchSize; }
+        public int getIngestDelayMillis() { return ingestDelayMillis; }
+        public void setIngestDelayMillis(int ingestDelayMillis) { this.ingestDelayMillis = ingestDelayMillis; }
+    }
+
     public DatabaseConfig toDatabaseConfig() {
         DatabaseSection db = getDatabase();
         return new DatabaseConfig(
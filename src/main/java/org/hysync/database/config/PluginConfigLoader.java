@@ -46,6 +46,14 @@ public class PluginConfigLoader {
      * @return loaded DatabaseConfig, or null if file is missing and default could not be written
      */
     public DatabaseConfig load() throws IOException {
+        return loadConfig().toDatabaseConfig();
+    }
+
+    /**
+     * Load the full config (database credentials plus tuning sections). Creates directory and
+     * default config if missing; sections absent from an older file keep their defaults.
+     */
+    public HysyncDataConfig loadConfig() throws IOException {
         Path configPath = getConfigPath();
         if (!Files.exists(configPath)) {
             createDefaultConfig(configPath);
@@ -55,7 +63,7 @@ public class PluginConfigLoader {
         if (parsed == null || parsed.getDatabase() == null) {
             parsed = new HysyncDataConfig();
         }
-        return parsed.toDatabaseConfig();
+        return parsed;
     }
 
     private void createDefaultConfig(Path configPath) throws IOException {
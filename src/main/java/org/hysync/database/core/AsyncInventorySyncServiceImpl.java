@@ -0,0 +1,125 @@
+package org.hysync.database.core;
+
+import org.hysync.database.api.AsyncInventorySyncService;
+import org.hysync.database.api.InventorySnapshot;
+import org.hysync.database.api.InventorySyncService;
+import org.hysync.database.api.VersionedInventory;
+
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Runs the blocking {@link InventorySyncService} calls on the plugin's database executor.
+ */
+public class AsyncInventorySyncServiceImpl implements AsyncInventorySyncService {
+
+    private final InventorySyncService delegate;
+    private final Executor executor;
+
+    public AsyncInventorySyncServiceImpl(InventorySyncService delegate, Executor executor) {
+        this.delegate = delegate;
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletableFuture<Optional<String>> getInventory(String playerUuid) {
+        return submit(() -> delegate.getInventory(playerUuid));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> setInventory(String playerUuid, @Nullable String displayName, String inventoryJson, int inventoryVersion) {
+        return submit(() -> delegate.setInventory(playerUuid, displayName, inventoryJson, inventoryVersion));
+    }
+
+    @Override
+    public CompletableFuture<Optional<VersionedInventory>> getVersionedInventory(String playerUuid) {
+        return submit(() -> delegate.getVersionedInventory(playerUuid));
+    }
+
+    @Override
+    public CompletableFuture<OptionalLong> setInventory(String playerUuid, @Nullable String displayName, String inventoryJson,
+                                                        int inventoryVersion, long expectedRevision) {
+        return submit(() -> delegate.setInventory(playerUuid, displayName, inventoryJson, inventoryVersion, expectedRevision));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> savePlayerState(String playerUuid, @Nullable String displayName, String inventoryJson,
+                                                      int inventoryVersion, @Nullable String hotbarManagerJson) {
+        return submit(() -> delegate.savePlayerState(playerUuid, displayName, inventoryJson, inventoryVersion, hotbarManagerJson));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> updateContainers(String playerUuid, Map<String, String> containers) {
+        // HashMap copy: null values (removed keys) are allowed.
+        Map<String, String> copy = new HashMap<>(containers);
+        return submit(() -> delegate.updateContainers(playerUuid, copy));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> setInventories(Collection<InventorySnapshot> snapshots) {
+        // Copy now: the caller may keep mutating its collection after we return.
+        List<InventorySnapshot> copy = List.copyOf(snapshots);
+        return submit(() -> delegate.setInventories(copy));
+    }
+
+    @Override
+    public CompletableFuture<Optional<String>> getHotbarManager(String playerUuid) {
+        return submit(() -> delegate.getHotbarManager(playerUuid));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> setHotbarManager(String playerUuid, String hotbarManagerJson) {
+        return submit(() -> delegate.setHotbarManager(playerUuid, hotbarManagerJson));
+    }
+
+    @Override
+    public CompletableFuture<Optional<InventorySyncService.PlayerInfo>> getPlayer(String playerUuid) {
+        return submit(() -> delegate.getPlayer(playerUuid));
+    }
+
+    @Override
+    public CompletableFuture<Optional<String>> getCurrentServerId(String playerUuid) {
+        return submit(() -> delegate.getCurrentServerId(playerUuid));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> claimSession(String playerUuid, String serverId) {
+        return submit(() -> delegate.claimSession(playerUuid, serverId));
+    }
+
+    @Override
+    public CompletableFuture<Void> releaseSession(String playerUuid, String serverId) {
+        return submit(() -> {
+            delegate.releaseSession(playerUuid, serverId);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Set<String>> getOnlinePlayers(String serverId) {
+        return submit(() -> delegate.getOnlinePlayers(serverId));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Integer>> getOnlineCounts() {
+        return submit(delegate::getOnlineCounts);
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+}
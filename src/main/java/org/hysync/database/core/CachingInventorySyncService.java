@@ -0,0 +1,199 @@
+package org.hysync.database.core;
+
+import org.hysync.database.api.InventorySnapshot;
+import org.hysync.database.api.InventorySyncService;
+import org.hysync.database.api.VersionedInventory;
+import org.hysync.database.util.BoundedCache;
+
+import javax.annotation.Nullable;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+
+/**
+ * Read-through cache in front of {@link InventorySyncServiceImpl}. {@code getInventory},
+ * {@code getHotbarManager} and {@code getPlayer} are served from memory after the first load
+ * (one query fills all three).
+ * <p>
+ * Entries are evicted on local writes and, for writes made by any server, by the
+ * {@value #CHANNEL} notifications sent by the V6 triggers. The cache is bypassed whenever the
+ * listener connection is down, and cleared on reconnect, so a missed notification can never
+ * leave a stale entry behind.
+ */
+public class CachingInventorySyncService implements InventorySyncService {
+
+    /** NOTIFY channel carrying the UUID of every changed players / player_inventory row (see V6). */
+    public static final String CHANNEL = "hysync_inventory";
+    /** Triggers that must both exist for cross-server invalidation to work (inventory rows, players rows). */
+    public static final String TRIGGER = "trg_player_inventory_notify";
+    public static final String PLAYERS_TRIGGER = "trg_players_notify";
+
+    private final InventorySyncServiceImpl delegate;
+    private final NotificationListener listener;
+    private final BoundedCache<String, PlayerState> cache;
+
+    public CachingInventorySyncService(InventorySyncServiceImpl delegate, NotificationListener listener, int maximumSize) {
+        this.delegate = delegate;
+        this.listener = listener;
+        this.cache = new BoundedCache<>(maximumSize);
+        listener.onReconnect(cache::invalidateAll);
+        listener.subscribe(CHANNEL, cache::invalidate);
+    }
+
+    @Override
+    public Optional<String> getInventory(String playerUuid) {
+        PlayerState state = cachedState(playerUuid);
+        return state != null ? state.inventory() : delegate.getInventory(playerUuid);
+    }
+
+    @Override
+    public boolean setInventory(String playerUuid, @Nullable String displayName, String inventoryJson, int inventoryVersion) {
+        try {
+            return delegate.setInventory(playerUuid, displayName, inventoryJson, inventoryVersion);
+        } finally {
+            invalidate(playerUuid);
+        }
+    }
+
+    @Override
+    public Optional<VersionedInventory> getVersionedInventory(String playerUuid) {
+        // Not cached: the revision is only useful if it is current.
+        return delegate.getVersionedInventory(playerUuid);
+    }
+
+    @Override
+    public OptionalLong setInventory(String playerUuid, @Nullable String displayName, String inventoryJson, int inventoryVersion,
+                                     long expectedRevision) {
+        try {
+            return delegate.setInventory(playerUuid, displayName, inventoryJson, inventoryVersion, expectedRevision);
+        } finally {
+            invalidate(playerUuid);
+        }
+    }
+
+    @Override
+    public boolean savePlayerState(String playerUuid, @Nullable String displayName, String inventoryJson, int inventoryVersion,
+                                   @Nullable String hotbarManagerJson) {
+        try {
+            return delegate.savePlayerState(playerUuid, displayName, inventoryJson, inventoryVersion, hotbarManagerJson);
+        } finally {
+            invalidate(playerUuid);
+        }
+    }
+
+    @Override
+    public boolean updateContainers(String playerUuid, Map<String, String> containers) {
+        try {
+            return delegate.updateContainers(playerUuid, containers);
+        } finally {
+            invalidate(playerUuid);
+        }
+    }
+
+    @Override
+    public boolean setInventories(Collection<InventorySnapshot> snapshots) {
+        try {
+            return delegate.setInventories(snapshots);
+        } finally {
+            if (snapshots != null) {
+                for (InventorySnapshot snapshot : snapshots) {
+                    invalidate(snapshot.playerUuid());
+                }
+            }
+        }
+    }
+
+    @Override
+    public Optional<String> getHotbarManager(String playerUuid) {
+        PlayerState state = cachedState(playerUuid);
+        return state != null ? state.hotbarManager() : delegate.getHotbarManager(playerUuid);
+    }
+
+    @Override
+    public boolean setHotbarManager(String playerUuid, String hotbarManagerJson) {
+        try {
+            return delegate.setHotbarManager(playerUuid, hotbarManagerJson);
+        } finally {
+            invalidate(playerUuid);
+        }
+    }
+
+    @Override
+    public Optional<PlayerInfo> getPlayer(String playerUuid) {
+        PlayerState state = cachedState(playerUuid);
+        return state != null ? state.player() : delegate.getPlayer(playerUuid);
+    }
+
+    @Override
+    public Optional<String> getCurrentServerId(String playerUuid) {
+        return delegate.getCurrentServerId(playerUuid);
+    }
+
+    @Override
+    public boolean claimSession(String playerUuid, String serverId) {
+        return delegate.claimSession(playerUuid, serverId);
+    }
+
+    @Override
+    public void releaseSession(String playerUuid, String serverId) {
+        delegate.releaseSession(playerUuid, serverId);
+    }
+
+    @Override
+    public Set<String> getOnlinePlayers(String serverId) {
+        return delegate.getOnlinePlayers(serverId);
+    }
+
+    @Override
+    public Map<String, Integer> getOnlineCounts() {
+        return delegate.getOnlineCounts();
+    }
+
+    public void invalidate(String playerUuid) {
+        if (playerUuid != null) {
+            cache.invalidate(playerUuid);
+        }
+    }
+
+    /** Take before loading a player's state elsewhere (e.g. prefetch); pass to {@link #prime}. */
+    public long stamp(String playerUuid) {
+        return cache.stamp(playerUuid);
+    }
+
+    /**
+     * Store state loaded outside this class (e.g. by the join prefetch), unless the player was
+     * invalidated since {@code loadStamp} or the cache is not trustworthy right now.
+     */
+    public void prime(String playerUuid, PlayerState state, long loadStamp) {
+        if (playerUuid != null && listener.isListening(CHANNEL)) {
+            cache.putIfUnchanged(playerUuid, state, loadStamp);
+        }
+    }
+
+    public BoundedCache.Stats cacheStats() {
+        return cache.stats();
+    }
+
+    /**
+     * Cached (or freshly loaded and cached) state, or null when the cache cannot be trusted right
+     * now; callers then fall back to a direct query.
+     */
+    @Nullable
+    private PlayerState cachedState(String playerUuid) {
+        if (playerUuid == null || !listener.isListening(CHANNEL)) return null;
+        PlayerState state = cache.get(playerUuid);
+        if (state != null) return state;
+        long stamp = cache.stamp(playerUuid);
+        try {
+            state = delegate.loadPlayerState(playerUuid);
+        } catch (SQLException | RuntimeException e) {
+            // Same result as the uncached API on error, but never cache a failed read as "no data".
+            return PlayerState.EMPTY;
+        }
+        cache.putIfUnchanged(playerUuid, state, stamp);
+        return state;
+    }
+}
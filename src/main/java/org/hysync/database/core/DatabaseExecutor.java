@@ -0,0 +1,56 @@
+package org.hysync.database.core;
+
+import com.hypixel.hytale.logger.HytaleLogger;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor for blocking database work. Each task gets its own virtual thread, but at most
+ * {@code maxConcurrency} tasks run at once (normally the Hikari pool size), so queued work
+ * waits on a cheap semaphore instead of piling up on the connection pool.
+ */
+public class DatabaseExecutor implements Executor {
+
+    private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+
+    private final ExecutorService executor;
+    private final Semaphore permits;
+
+    public DatabaseExecutor(int maxConcurrency) {
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("HysyncDB-async-", 0).factory());
+        this.permits = new Semaphore(Math.max(1, maxConcurrency), true);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        executor.execute(() -> {
+            permits.acquireUninterruptibly();
+            try {
+                task.run();
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    /**
+     * Stop accepting tasks and wait for queued ones to finish, so pending saves reach the
+     * database before the pool is closed.
+     */
+    public void shutdown(long timeout, TimeUnit unit) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeout, unit)) {
+                LOGGER.atWarning().log("[DatabaseExecutor] Timed out waiting for pending database tasks");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -3,19 +3,28 @@ package org.hysync.database.core;
 import org.hysync.database.config.DatabaseConfig;
 
 import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 
 public class DatabaseManager {
 
+    /** Hikari pool size; also bounds concurrent tasks on the async database executor. */
+    public static final int MAXIMUM_POOL_SIZE = 10;
+
     private final com.zaxxer.hikari.HikariDataSource dataSource;
+    private final DatabaseConfig config;
+    private volatile NotificationListener notificationListener;
 
     public DatabaseManager(DatabaseConfig config) {
+        this.config = config;
         com.zaxxer.hikari.HikariConfig hikariConfig = new com.zaxxer.hikari.HikariConfig();
         hikariConfig.setJdbcUrl(config.getJdbcUrl());
         hikariConfig.setUsername(config.getUsername());
         hikariConfig.setPassword(config.getPassword());
 
-        hikariConfig.setMaximumPoolSize(10);
+        hikariConfig.setMaximumPoolSize(MAXIMUM_POOL_SIZE);
         hikariConfig.setMinimumIdle(2);
         hikariConfig.setPoolName("HysyncHikariPool");
 
@@ -43,7 +52,72 @@ public class DatabaseManager {
         return dataSource.getConnection();
     }
 
+    /**
+     * Open a connection outside the pool, for long-lived sessions such as LISTEN that would
+     * otherwise hold a pool slot forever. Caller must close it.
+     */
+    public Connection openDedicatedConnection() throws SQLException {
+        return DriverManager.getConnection(config.getJdbcUrl(), config.getUsername(), config.getPassword());
+    }
+
+    /**
+     * Whether a trigger created by one of our migrations exists. Used to switch off features that
+     * would silently misbehave without it (e.g. NOTIFY-based cache invalidation).
+     */
+    public boolean hasTrigger(String triggerName) {
+        try (Connection conn = getConnection();
+             PreparedStatement ps = conn.prepareStatement("SELECT 1 FROM pg_trigger WHERE tgname = ? AND NOT tgisinternal")) {
+            ps.setString(1, triggerName);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /** Whether a function created by one of our migrations exists (same purpose as {@link #hasTrigger}). */
+    public boolean hasFunction(String functionName) {
+        try (Connection conn = getConnection();
+             PreparedStatement ps = conn.prepareStatement("SELECT 1 FROM pg_proc WHERE proname = ?")) {
+            ps.setString(1, functionName);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /** Whether a table created by one of our migrations exists (same purpose as {@link #hasTrigger}). */
+    public boolean hasTable(String tableName) {
+        try (Connection conn = getConnection();
+             PreparedStatement ps = conn.prepareStatement("SELECT to_regclass(?) IS NOT NULL")) {
+            ps.setString(1, tableName);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /** Shared LISTEN/NOTIFY receiver, started on first use on its own dedicated connection. */
+    public NotificationListener getNotificationListener() {
+        if (notificationListener == null) {
+            synchronized (this) {
+                if (notificationListener == null) {
+                    notificationListener = new NotificationListener(this);
+                }
+            }
+        }
+        return notificationListener;
+    }
+
     public void shutdown() {
+        if (notificationListener != null) {
+            notificationListener.close();
+        }
         if (dataSource != null && !dataSource.isClosed()) {
             dataSource.close();
         }
@@ -1,19 +1,52 @@
 package org.hysync.database.core;
 
+import org.hysync.database.api.AsyncInventorySyncService;
 import org.hysync.database.api.InventorySyncService;
-import org.hysync.database.config.DatabaseConfig;
+import org.hysync.database.api.PrefetchedPlayer;
+import org.hysync.database.config.HysyncDataConfig;
+import org.hysync.database.repository.VoteDAO;
 import com.hypixel.hytale.logger.HytaleLogger;
 
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 public class DatabasePlugin {
     private final DatabaseManager databaseManager;
+    private final HysyncDataConfig config;
+    private final DatabaseExecutor databaseExecutor;
+    private final ScheduledExecutorService scheduler;
+    // Own thread, so a slow flush or partition check can never delay renewals past the lease.
+    private final ScheduledExecutorService sessionScheduler;
     private volatile InventorySyncService inventorySyncService;
-    private volatile org.hysync.database.api.StashSyncService stashSyncService;
-    private volatile org.hysync.database.api.VoteSyncService voteSyncService;
+    private volatile CachingInventorySyncService inventoryCache;
+    private volatile WriteBehindInventorySyncService inventoryWriteBehind;
+    private volatile AsyncInventorySyncService asyncInventorySyncService;
+    private volatile StashSyncServiceImpl stashSyncService;
+    private volatile PlayerPrefetcher playerPrefetcher;
+    private volatile VoteSyncServiceImpl voteSyncService;
+    private volatile org.hysync.database.api.ItemSearchService itemSearchService;
 
     private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
 
-    public DatabasePlugin(DatabaseConfig config) {
-        databaseManager = new DatabaseManager(config);
+    public DatabasePlugin(HysyncDataConfig config) {
+        this.config = config;
+        databaseManager = new DatabaseManager(config.toDatabaseConfig());
+        databaseExecutor = new DatabaseExecutor(DatabaseManager.MAXIMUM_POOL_SIZE);
+        scheduler = newScheduler("HysyncDB-scheduler");
+        sessionScheduler = newScheduler("HysyncDB-sessions");
+    }
+
+    private static ScheduledExecutorService newScheduler(String threadName) {
+        return Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, threadName);
+            t.setDaemon(true);
+            return t;
+        });
     }
 
     public DatabaseManager getDatabaseManager() {
@@ -22,28 +55,194 @@ public class DatabasePlugin {
 
     /**
      * Cross-server inventory API for other plugins. Tables must exist (run V1
-     * migration first).
+     * migration first). With {@code inventory.writeBehind} enabled, saves are
+     * buffered and flushed on {@code inventory.flushIntervalSeconds}; with
+     * {@code inventory.storageFormat} "deflate" (run V5 first) snapshots are stored compressed.
+     * Reads go through a cache of {@code inventory.cacheSize} players (run V6 first).
+     * Claimed sessions are renewed every {@code sessions.heartbeatSeconds} (run V7 first);
+     * session lookups are served from memory with {@code sessions.directory} (run V9 first).
      */
     public InventorySyncService getInventorySyncService() {
         if (inventorySyncService == null) {
             synchronized (this) {
                 if (inventorySyncService == null) {
-                    inventorySyncService = new InventorySyncServiceImpl(databaseManager);
+                    HysyncDataConfig.InventorySection settings = config.getInventory();
+                    if (!settings.isCompressed() && !"json".equalsIgnoreCase(settings.getStorageFormat())) {
+                        LOGGER.atWarning().log("[DatabasePlugin] Unknown inventory.storageFormat \"%s\" (expected \"json\" or \"deflate\"); storing plain JSON",
+                            settings.getStorageFormat());
+                    }
+                    SessionDirectory directory = null;
+                    if (config.getSessions().isDirectory()) {
+                        if (databaseManager.hasTrigger(SessionDirectory.TRIGGER)) {
+                            directory = new SessionDirectory(databaseManager, databaseManager.getNotificationListener());
+                        } else {
+                            LOGGER.atWarning().log("[DatabasePlugin] Session directory disabled: run migration V9");
+                        }
+                    }
+                    InventorySyncServiceImpl impl = new InventorySyncServiceImpl(databaseManager, settings.isCompressed(),
+                        config.getSessions().getLeaseSeconds(), directory);
+                    InventorySyncService service = impl;
+                    scheduleSessionMaintenance(impl);
+                    if (settings.getCacheSize() > 0) {
+                        if (databaseManager.hasTrigger(CachingInventorySyncService.TRIGGER)
+                                && databaseManager.hasTrigger(CachingInventorySyncService.PLAYERS_TRIGGER)) {
+                            inventoryCache = new CachingInventorySyncService(impl, databaseManager.getNotificationListener(),
+                                settings.getCacheSize());
+                            service = inventoryCache;
+                        } else {
+                            LOGGER.atWarning().log("[DatabasePlugin] Inventory cache disabled: run migration V6 for cross-server invalidation");
+                        }
+                    }
+                    if (settings.isWriteBehind()) {
+                        WriteBehindInventorySyncService writeBehind = new WriteBehindInventorySyncService(service, impl);
+                        long interval = Math.max(1, settings.getFlushIntervalSeconds());
+                        scheduler.scheduleWithFixedDelay(() -> {
+                            try {
+                                writeBehind.flushAll();
+                            } catch (RuntimeException e) {
+                                LOGGER.atWarning().withCause(e).log("[DatabasePlugin] Inventory flush failed");
+                            }
+                        }, interval, interval, TimeUnit.SECONDS);
+                        inventoryWriteBehind = writeBehind;
+                        service = writeBehind;
+                    }
+                    inventorySyncService = service;
                 }
             }
         }
         return inventorySyncService;
     }
 
+    /** Heartbeat for this server's sessions and the reaper for sessions of crashed servers. */
+    private void scheduleSessionMaintenance(InventorySyncServiceImpl impl) {
+        HysyncDataConfig.SessionSection sessions = config.getSessions();
+        if (sessions.getLeaseSeconds() > 0 && sessions.getHeartbeatSeconds() >= sessions.getLeaseSeconds()) {
+            LOGGER.atWarning().log("[DatabasePlugin] sessions.heartbeatSeconds (%d) should be well below sessions.leaseSeconds (%d)",
+                sessions.getHeartbeatSeconds(), sessions.getLeaseSeconds());
+        }
+        if (sessions.getHeartbeatSeconds() > 0) {
+            long interval = sessions.getHeartbeatSeconds();
+            sessionScheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    impl.heartbeatSessions();
+                } catch (SQLException | RuntimeException e) {
+                    LOGGER.atWarning().withCause(e).log("[DatabasePlugin] Session heartbeat failed");
+                }
+            }, interval, interval, TimeUnit.SECONDS);
+        }
+        if (sessions.getLeaseSeconds() > 0 && sessions.getReapIntervalSeconds() > 0) {
+            long interval = sessions.getReapIntervalSeconds();
+            sessionScheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    int reaped = impl.reapExpiredSessions();
+                    if (reaped > 0) {
+                        LOGGER.atInfo().log("[DatabasePlugin] Removed %d expired session(s)", reaped);
+                    }
+                } catch (SQLException | RuntimeException e) {
+                    LOGGER.atWarning().withCause(e).log("[DatabasePlugin] Session reaper failed");
+                }
+            }, interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Non-blocking inventory API; same operations as {@link #getInventorySyncService()}
+     * but executed on the plugin's database executor.
+     */
+    public AsyncInventorySyncService getAsyncInventorySyncService() {
+        if (asyncInventorySyncService == null) {
+            synchronized (this) {
+                if (asyncInventorySyncService == null) {
+                    asyncInventorySyncService = new AsyncInventorySyncServiceImpl(getInventorySyncService(), databaseExecutor);
+                }
+            }
+        }
+        return asyncInventorySyncService;
+    }
+
+    /**
+     * Load everything the join path needs for a player (inventory, hotbar, player info, session,
+     * stashes, stash limit, vote total) in one query on the database executor, and warm the
+     * inventory and stash caches with it. Call as early as possible, e.g. on connect.
+     * The future completes exceptionally on database error.
+     */
+    public CompletableFuture<PrefetchedPlayer> prefetchPlayer(String playerUuid) {
+        getInventorySyncService();
+        PlayerPrefetcher prefetcher = getPlayerPrefetcher();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                WriteBehindInventorySyncService writeBehind = inventoryWriteBehind;
+                if (writeBehind != null) {
+                    // A buffered snapshot is newer than the database row; write it before reading.
+                    writeBehind.flush(playerUuid);
+                }
+                stashServiceImpl().flushStashes(playerUuid);
+                try {
+                    return prefetcher.prefetch(playerUuid);
+                } catch (SQLException e) {
+                    throw new CompletionException(e);
+                }
+            }, databaseExecutor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Flush and drop a leaving player's cached stashes on the database executor, so the disconnect
+     * event does not wait for the write. The cache entry is dropped once the flush is done.
+     */
+    public void unloadPlayer(String playerUuid) {
+        StashSyncServiceImpl stashes = stashSyncService;
+        if (stashes == null) return;
+        try {
+            databaseExecutor.execute(() -> stashes.unloadCache(playerUuid));
+        } catch (RejectedExecutionException e) {
+            // Shutting down: teardown flushes every dirty stash.
+        }
+    }
+
+    private PlayerPrefetcher getPlayerPrefetcher() {
+        if (playerPrefetcher == null) {
+            synchronized (this) {
+                if (playerPrefetcher == null) {
+                    getVoteSyncService();
+                    playerPrefetcher = new PlayerPrefetcher(databaseManager, inventoryCache, stashServiceImpl(),
+                        voteSyncService, config.getSessions().getLeaseSeconds());
+                }
+            }
+        }
+        return playerPrefetcher;
+    }
+
     /**
      * Cross-server stash API for other plugins. Tables must exist (run V3 migration
-     * first).
+     * first). Up to {@code stashes.cacheSize} stashes are cached in memory. With
+     * {@code stashes.writeBehind} enabled, saves are buffered and flushed on
+     * {@code stashes.flushIntervalSeconds}.
      */
     public org.hysync.database.api.StashSyncService getStashSyncService() {
+        return stashServiceImpl();
+    }
+
+    private StashSyncServiceImpl stashServiceImpl() {
         if (stashSyncService == null) {
             synchronized (this) {
                 if (stashSyncService == null) {
-                    stashSyncService = new StashSyncServiceImpl(databaseManager);
+                    HysyncDataConfig.StashSection settings = config.getStashes();
+                    StashSyncServiceImpl service = new StashSyncServiceImpl(databaseManager, settings.getCacheSize(),
+                        settings.getCacheExpireMinutes(), settings.getNegativeCacheSeconds(), settings.isWriteBehind());
+                    if (settings.isWriteBehind()) {
+                        long interval = Math.max(1, settings.getFlushIntervalSeconds());
+                        scheduler.scheduleWithFixedDelay(() -> {
+                            try {
+                                service.flushAll();
+                            } catch (RuntimeException e) {
+                                LOGGER.atWarning().withCause(e).log("[DatabasePlugin] Stash flush failed");
+                            }
+                        }, interval, interval, TimeUnit.SECONDS);
+                    }
+                    stashSyncService = service;
                 }
             }
         }
@@ -51,23 +250,93 @@ public class DatabasePlugin {
     }
 
     /**
-     * Cross-server vote API for other plugins.
+     * Cross-server vote API for other plugins. Totals are kept in player_vote_totals (run V12
+     * first); the top {@code votes.leaderboardSize} voters are served from memory (run V13 first).
      */
     public org.hysync.database.api.VoteSyncService getVoteSyncService() {
         if (voteSyncService == null) {
             synchronized (this) {
                 if (voteSyncService == null) {
-                    voteSyncService = new VoteSyncServiceImpl(databaseManager);
+                    VoteLeaderboard leaderboard = null;
+                    int size = config.getVotes().getLeaderboardSize();
+                    if (size > 0) {
+                        if (databaseManager.hasTrigger(VoteLeaderboard.TRIGGER)) {
+                            leaderboard = new VoteLeaderboard(databaseManager, databaseManager.getNotificationListener(), size);
+                        } else {
+                            LOGGER.atWarning().log("[DatabasePlugin] Vote leaderboard cache disabled: run migrations V12 and V13");
+                        }
+                    }
+                    VoteSyncServiceImpl service = new VoteSyncServiceImpl(databaseManager, leaderboard,
+                        config.getVotes().getIngestBatchSize(), config.getVotes().getIngestDelayMillis());
+                    if (databaseManager.hasFunction(VoteDAO.PARTITION_FUNCTION)) {
+                        // Next months' partitions; daily so a long-running server crosses month ends safely.
+                        scheduler.scheduleWithFixedDelay(() -> {
+                            try {
+                                service.ensurePartitions();
+                            } catch (RuntimeException e) {
+                                // Thrown out of the task, it would cancel every later run.
+                                LOGGER.atWarning().withCause(e).log("[DatabasePlugin] Vote partition check failed");
+                            }
+                        }, 0, 1, TimeUnit.DAYS);
+                    }
+                    voteSyncService = service;
                 }
             }
         }
         return voteSyncService;
     }
 
+    /**
+     * Item search over all inventories and stashes (admin tools). Run V11 first for the indexes.
+     */
+    public org.hysync.database.api.ItemSearchService getItemSearchService() {
+        if (itemSearchService == null) {
+            synchronized (this) {
+                if (itemSearchService == null) {
+                    itemSearchService = new ItemSearchServiceImpl(databaseManager);
+                }
+            }
+        }
+        return itemSearchService;
+    }
+
     public void teardown() {
+        // Let a running periodic flush finish instead of interrupting it mid-write.
+        awaitShutdown(scheduler);
+        // Drain queued async work first; it still needs the pool.
+        databaseExecutor.shutdown(10, TimeUnit.SECONDS);
+        WriteBehindInventorySyncService writeBehind = inventoryWriteBehind;
+        if (writeBehind != null) {
+            int failed = writeBehind.flushAll();
+            if (failed > 0) {
+                LOGGER.atSevere().log("[DatabasePlugin] %d inventory snapshot(s) could not be saved on shutdown", failed);
+            }
+        }
+        StashSyncServiceImpl stashes = stashSyncService;
+        if (stashes != null) {
+            int failed = stashes.flushAll();
+            if (failed > 0) {
+                LOGGER.atSevere().log("[DatabasePlugin] %d stash(es) could not be saved on shutdown", failed);
+            }
+        }
+        // Sessions stay renewed until the final snapshots above are written and released.
+        awaitShutdown(sessionScheduler);
+        VoteSyncServiceImpl votes = voteSyncService;
+        if (votes != null) {
+            votes.close();
+        }
         if (databaseManager != null) {
             databaseManager.shutdown();
         }
         LOGGER.atInfo().log("[DatabasePlugin] Plugin disabled.");
     }
+
+    private static void awaitShutdown(ScheduledExecutorService executor) {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 }
\ No newline at end of file
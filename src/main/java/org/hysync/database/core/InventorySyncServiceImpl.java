@@ -1,44 +1,168 @@
 package org.hysync.database.core;
 
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.hysync.database.api.InventoryDiff;
+import org.hysync.database.api.InventorySnapshot;
 import org.hysync.database.api.InventorySyncService;
+import org.hysync.database.api.VersionedInventory;
+import org.hysync.database.util.JsonCompression;
+import com.hypixel.hytale.logger.HytaleLogger;
 
 import javax.annotation.Nullable;
 import java.sql.*;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Implementation of cross-server inventory sync using the players and player_inventory tables.
  * Assumes migrations V1 and V2 (player_sessions) have been applied.
  */
 public class InventorySyncServiceImpl implements InventorySyncService {
+    private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
 
+    /** Bumps player_inventory.revision on every update (V8); conditional writes need it. */
+    public static final String REVISION_TRIGGER = "trg_player_inventory_revision";
+
+    // Payload columns come in pairs (jsonb, compressed bytea); at most one of each pair is set. See V5.
     private static final String GET_INVENTORY =
-        "SELECT inventory_json FROM player_inventory WHERE player_uuid = ?";
+        "SELECT inventory_json, inventory_blob FROM player_inventory WHERE player_uuid = ?";
     private static final String SET_INVENTORY_PLAYER =
         "INSERT INTO players (uuid, display_name, updated_at) VALUES (?, ?, NOW()) " +
         "ON CONFLICT (uuid) DO UPDATE SET display_name = COALESCE(EXCLUDED.display_name, players.display_name), updated_at = NOW()";
     private static final String SET_INVENTORY =
-        "INSERT INTO player_inventory (player_uuid, inventory_version, inventory_json, updated_at) VALUES (?, ?, ?::jsonb, NOW()) " +
-        "ON CONFLICT (player_uuid) DO UPDATE SET inventory_version = EXCLUDED.inventory_version, inventory_json = EXCLUDED.inventory_json, updated_at = NOW()";
+        "INSERT INTO player_inventory (player_uuid, inventory_version, inventory_json, inventory_blob, updated_at) VALUES (?, ?, ?::jsonb, ?, NOW()) " +
+        "ON CONFLICT (player_uuid) DO UPDATE SET inventory_version = EXCLUDED.inventory_version, inventory_json = EXCLUDED.inventory_json, " +
+        "inventory_blob = EXCLUDED.inventory_blob, updated_at = NOW()";
+    // Players row, inventory and hotbar in one statement: the data-modifying CTE runs first and
+    // the inventory row is only written once the players row exists (FK).
+    private static final String SAVE_PLAYER_STATE =
+        "WITH p AS (" +
+        "INSERT INTO players (uuid, display_name, updated_at) VALUES (?, ?, NOW()) " +
+        "ON CONFLICT (uuid) DO UPDATE SET display_name = COALESCE(EXCLUDED.display_name, players.display_name), updated_at = NOW() " +
+        "RETURNING uuid) " +
+        "INSERT INTO player_inventory (player_uuid, inventory_version, inventory_json, inventory_blob, hotbar_manager_json, hotbar_manager_blob, updated_at) " +
+        "SELECT uuid, ?, ?::jsonb, ?, ?::jsonb, ?, NOW() FROM p " +
+        "ON CONFLICT (player_uuid) DO UPDATE SET inventory_version = EXCLUDED.inventory_version, inventory_json = EXCLUDED.inventory_json, " +
+        "inventory_blob = EXCLUDED.inventory_blob, " +
+        "hotbar_manager_json = CASE WHEN EXCLUDED.hotbar_manager_json IS NULL AND EXCLUDED.hotbar_manager_blob IS NULL " +
+        "THEN player_inventory.hotbar_manager_json ELSE EXCLUDED.hotbar_manager_json END, " +
+        "hotbar_manager_blob = CASE WHEN EXCLUDED.hotbar_manager_json IS NULL AND EXCLUDED.hotbar_manager_blob IS NULL " +
+        "THEN player_inventory.hotbar_manager_blob ELSE EXCLUDED.hotbar_manager_blob END, updated_at = NOW()";
+    // Conditional writes (V8). The revision trigger bumps revision on every UPDATE, so RETURNING
+    // yields the new revision. Expected revision 0: insert only if the player has no row yet.
+    private static final String GET_VERSIONED_INVENTORY =
+        "SELECT inventory_json, inventory_blob, revision FROM player_inventory WHERE player_uuid = ?";
+    private static final String INSERT_INVENTORY_IF_ABSENT =
+        "WITH p AS (" +
+        "INSERT INTO players (uuid, display_name, updated_at) VALUES (?, ?, NOW()) " +
+        "ON CONFLICT (uuid) DO UPDATE SET display_name = COALESCE(EXCLUDED.display_name, players.display_name), updated_at = NOW() " +
+        "RETURNING uuid) " +
+        "INSERT INTO player_inventory (player_uuid, inventory_version, inventory_json, inventory_blob, updated_at) " +
+        "SELECT uuid, ?, ?::jsonb, ?, NOW() FROM p " +
+        "ON CONFLICT (player_uuid) DO NOTHING RETURNING revision";
+    // The players row is only touched if the inventory update matched.
+    private static final String UPDATE_INVENTORY_IF_REVISION =
+        "WITH i AS (" +
+        "UPDATE player_inventory SET inventory_version = ?, inventory_json = ?::jsonb, inventory_blob = ?, updated_at = NOW() " +
+        "WHERE player_uuid = ? AND revision = ? RETURNING revision), " +
+        "p AS (UPDATE players SET display_name = COALESCE(?, display_name), updated_at = NOW() " +
+        "WHERE uuid = ? AND EXISTS (SELECT 1 FROM i)) " +
+        "SELECT revision FROM i";
+    // Drop removed keys, then merge the changed top-level containers (|| replaces whole keys).
+    // Only applies to rows stored as JSONB; compressed rows are patched client-side.
+    private static final String UPDATE_CONTAINERS =
+        "UPDATE player_inventory SET inventory_json = (inventory_json - ?::text[]) || ?::jsonb, updated_at = NOW() " +
+        "WHERE player_uuid = ? AND inventory_json IS NOT NULL";
+    private static final String LOCK_INVENTORY =
+        "SELECT inventory_json, inventory_blob FROM player_inventory WHERE player_uuid = ? FOR UPDATE";
+    private static final String REWRITE_INVENTORY =
+        "UPDATE player_inventory SET inventory_json = ?::jsonb, inventory_blob = ?, updated_at = NOW() WHERE player_uuid = ?";
     private static final String GET_HOTBAR_MANAGER =
-        "SELECT hotbar_manager_json FROM player_inventory WHERE player_uuid = ?";
+        "SELECT hotbar_manager_json, hotbar_manager_blob FROM player_inventory WHERE player_uuid = ?";
     private static final String SET_HOTBAR_MANAGER =
-        "UPDATE player_inventory SET hotbar_manager_json = ?::jsonb, updated_at = NOW() WHERE player_uuid = ?";
+        "UPDATE player_inventory SET hotbar_manager_json = ?::jsonb, hotbar_manager_blob = ?, updated_at = NOW() WHERE player_uuid = ?";
     private static final String GET_PLAYER =
         "SELECT uuid, display_name, updated_at FROM players WHERE uuid = ?";
+    // player_inventory rows always have a players row (FK), so this finds everything in one query.
+    private static final String GET_PLAYER_STATE =
+        "SELECT p.uuid, p.display_name, p.updated_at, i.inventory_json, i.inventory_blob, i.hotbar_manager_json, i.hotbar_manager_blob " +
+        "FROM players p LEFT JOIN player_inventory i ON i.player_uuid = p.uuid WHERE p.uuid = ?";
 
+    // Sessions older than the lease (params: lease seconds twice; <= 0 disables expiry) count as free.
     private static final String GET_CURRENT_SERVER =
-        "SELECT server_id FROM player_sessions WHERE player_uuid = ?";
-    private static final String INSERT_SESSION =
-        "INSERT INTO player_sessions (player_uuid, server_id, updated_at) VALUES (?, ?, NOW())";
+        "SELECT server_id FROM player_sessions WHERE player_uuid = ? " +
+        "AND (? <= 0 OR updated_at >= NOW() - ? * INTERVAL '1 second')";
+    // Atomic claim: insert, take over our own or an expired session, else leave the row alone.
+    // Returns the owner after the statement: us if claimed, otherwise the server that holds it.
+    private static final String CLAIM_SESSION =
+        "WITH claim AS (" +
+        "INSERT INTO player_sessions (player_uuid, server_id, updated_at) VALUES (?, ?, NOW()) " +
+        "ON CONFLICT (player_uuid) DO UPDATE SET server_id = EXCLUDED.server_id, updated_at = NOW() " +
+        "WHERE player_sessions.server_id = EXCLUDED.server_id " +
+        "OR (? > 0 AND player_sessions.updated_at < NOW() - ? * INTERVAL '1 second') " +
+        "RETURNING server_id) " +
+        "SELECT server_id FROM claim " +
+        "UNION ALL SELECT server_id FROM player_sessions WHERE player_uuid = ? AND NOT EXISTS (SELECT 1 FROM claim)";
+    // Fallbacks while the session directory is unavailable (params: lease seconds twice, as above).
+    private static final String GET_ONLINE_PLAYERS =
+        "SELECT player_uuid FROM player_sessions WHERE server_id = ? " +
+        "AND (? <= 0 OR updated_at >= NOW() - ? * INTERVAL '1 second')";
+    private static final String GET_ONLINE_COUNTS =
+        "SELECT server_id, COUNT(*) FROM player_sessions " +
+        "WHERE ? <= 0 OR updated_at >= NOW() - ? * INTERVAL '1 second' GROUP BY server_id";
     private static final String DELETE_SESSION =
         "DELETE FROM player_sessions WHERE player_uuid = ? AND server_id = ?";
+    // Renews every session this server owns in one statement; rows not returned were lost.
+    private static final String HEARTBEAT_SESSIONS =
+        "UPDATE player_sessions SET updated_at = NOW() WHERE server_id = ? AND player_uuid = ANY(?) RETURNING player_uuid";
+    private static final String REAP_SESSIONS =
+        "DELETE FROM player_sessions WHERE updated_at < NOW() - ? * INTERVAL '1 second'";
 
     private final DatabaseManager databaseManager;
+    private final boolean compress;
+    private final int sessionLeaseSeconds;
+    @Nullable
+    private final SessionDirectory sessionDirectory;
+    // serverId -> player uuid -> claim sequence, for sessions claimed through this instance.
+    private final Map<String, Map<String, Long>> ownedSessions = new ConcurrentHashMap<>();
+    private final AtomicLong claimSequence = new AtomicLong();
+    private final boolean revisions;
+    private final AtomicBoolean revisionsWarned = new AtomicBoolean();
 
     public InventorySyncServiceImpl(DatabaseManager databaseManager) {
+        this(databaseManager, false, 0, null);
+    }
+
+    public InventorySyncServiceImpl(DatabaseManager databaseManager, boolean compress, int sessionLeaseSeconds) {
+        this(databaseManager, compress, sessionLeaseSeconds, null);
+    }
+
+    /**
+     * @param compress            write new snapshots as compressed blobs (requires V5); either format is always readable
+     * @param sessionLeaseSeconds sessions not renewed for this long can be claimed by another server; 0 = never expire
+     * @param sessionDirectory    serves session lookups from memory while available (requires V9); may be null
+     */
+    public InventorySyncServiceImpl(DatabaseManager databaseManager, boolean compress, int sessionLeaseSeconds,
+                                    @Nullable SessionDirectory sessionDirectory) {
         this.databaseManager = databaseManager;
+        this.compress = compress;
+        this.sessionLeaseSeconds = Math.max(0, sessionLeaseSeconds);
+        this.sessionDirectory = sessionDirectory;
+        this.revisions = databaseManager.hasTrigger(REVISION_TRIGGER);
     }
 
     @Override
@@ -48,11 +172,10 @@ public class InventorySyncServiceImpl implements InventorySyncService {
             ps.setString(1, playerUuid);
             try (ResultSet rs = ps.executeQuery()) {
                 if (rs.next()) {
-                    String json = rs.getString(1);
-                    return Optional.ofNullable(json);
+                    return Optional.ofNullable(readPayload(rs, 1));
                 }
             }
-        } catch (SQLException e) {
+        } catch (SQLException | IllegalArgumentException e) {
             // Log and return empty
         }
         return Optional.empty();
@@ -60,19 +183,177 @@ public class InventorySyncServiceImpl implements InventorySyncService {
 
     @Override
     public boolean setInventory(String playerUuid, @Nullable String displayName, String inventoryJson, int inventoryVersion) {
+        return savePlayerState(playerUuid, displayName, inventoryJson, inventoryVersion, null);
+    }
+
+    @Override
+    public Optional<VersionedInventory> getVersionedInventory(String playerUuid) {
+        if (!checkRevisions()) return Optional.empty();
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement ps = conn.prepareStatement(GET_VERSIONED_INVENTORY)) {
+            ps.setString(1, playerUuid);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    String json = readPayload(rs, 1);
+                    if (json != null) {
+                        return Optional.of(new VersionedInventory(json, rs.getLong(3)));
+                    }
+                }
+            }
+        } catch (SQLException | IllegalArgumentException e) {
+            // Log and return empty
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public OptionalLong setInventory(String playerUuid, @Nullable String displayName, String inventoryJson, int inventoryVersion,
+                                     long expectedRevision) {
+        if (playerUuid == null || inventoryJson == null || !checkRevisions()) return OptionalLong.empty();
+        boolean insert = expectedRevision == 0;
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement ps = conn.prepareStatement(insert ? INSERT_INVENTORY_IF_ABSENT : UPDATE_INVENTORY_IF_REVISION)) {
+            if (insert) {
+                ps.setString(1, playerUuid);
+                ps.setString(2, displayName);
+                ps.setInt(3, inventoryVersion);
+                bindPayload(ps, 4, inventoryJson);
+            } else {
+                ps.setInt(1, inventoryVersion);
+                bindPayload(ps, 2, inventoryJson);
+                ps.setString(4, playerUuid);
+                ps.setLong(5, expectedRevision);
+                ps.setString(6, displayName);
+                ps.setString(7, playerUuid);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? OptionalLong.of(rs.getLong(1)) : OptionalLong.empty();
+            }
+        } catch (SQLException e) {
+            return OptionalLong.empty();
+        }
+    }
+
+    /** Whether revisions are tracked (V8); warns once if not, since every conditional call then fails. */
+    private boolean checkRevisions() {
+        if (!revisions && revisionsWarned.compareAndSet(false, true)) {
+            LOGGER.atWarning().log("[Inventory] %s missing: run migration V8; versioned reads and conditional writes are unavailable",
+                REVISION_TRIGGER);
+        }
+        return revisions;
+    }
+
+    @Override
+    public boolean savePlayerState(String playerUuid, @Nullable String displayName, String inventoryJson, int inventoryVersion,
+                                   @Nullable String hotbarManagerJson) {
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement ps = conn.prepareStatement(SAVE_PLAYER_STATE)) {
+            ps.setString(1, playerUuid);
+            ps.setString(2, displayName);
+            ps.setInt(3, inventoryVersion);
+            bindPayload(ps, 4, inventoryJson);
+            bindPayload(ps, 6, hotbarManagerJson);
+            return ps.executeUpdate() > 0;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean updateContainers(String playerUuid, Map<String, String> containers) {
+        if (playerUuid == null || containers == null) return false;
+        if (containers.isEmpty()) return true;
+        List<String> removed = new ArrayList<>();
+        JsonObject changed = new JsonObject();
+        for (Map.Entry<String, String> entry : containers.entrySet()) {
+            if (entry.getValue() == null) {
+                removed.add(entry.getKey());
+            } else {
+                changed.add(entry.getKey(), JsonParser.parseString(entry.getValue()));
+            }
+        }
+        try (Connection conn = databaseManager.getConnection()) {
+            if (!compress) {
+                try (PreparedStatement ps = conn.prepareStatement(UPDATE_CONTAINERS)) {
+                    ps.setArray(1, conn.createArrayOf("text", removed.toArray()));
+                    ps.setString(2, changed.toString());
+                    ps.setString(3, playerUuid);
+                    if (ps.executeUpdate() > 0) return true;
+                }
+            }
+            return rewriteContainers(conn, playerUuid, containers);
+        } catch (SQLException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    /** Read-modify-write under a row lock, for compressed rows (or to convert a row to the configured format). */
+    private boolean rewriteContainers(Connection conn, String playerUuid, Map<String, String> containers) throws SQLException {
+        conn.setAutoCommit(false);
+        try {
+            String current = null;
+            try (PreparedStatement ps = conn.prepareStatement(LOCK_INVENTORY)) {
+                ps.setString(1, playerUuid);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) current = readPayload(rs, 1);
+                }
+            }
+            if (current == null) {
+                conn.rollback();
+                return false;
+            }
+            try (PreparedStatement ps = conn.prepareStatement(REWRITE_INVENTORY)) {
+                bindPayload(ps, 1, InventoryDiff.apply(current, containers));
+                ps.setString(3, playerUuid);
+                ps.executeUpdate();
+            }
+            conn.commit();
+            return true;
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    @Override
+    public boolean setInventories(Collection<InventorySnapshot> snapshots) {
+        if (snapshots == null || snapshots.isEmpty()) return true;
+        // One row per player: ON CONFLICT cannot touch the same row twice in a rewritten batch.
+        Map<String, InventorySnapshot> byPlayer = new LinkedHashMap<>();
+        for (InventorySnapshot snapshot : snapshots) {
+            byPlayer.put(snapshot.playerUuid(), snapshot);
+        }
         try (Connection conn = databaseManager.getConnection()) {
             conn.setAutoCommit(false);
             try {
-                try (PreparedStatement ps = conn.prepareStatement(SET_INVENTORY_PLAYER)) {
-                    ps.setString(1, playerUuid);
-                    ps.setString(2, displayName);
-                    ps.executeUpdate();
-                }
-                try (PreparedStatement ps = conn.prepareStatement(SET_INVENTORY)) {
-                    ps.setString(1, playerUuid);
-                    ps.setInt(2, inventoryVersion);
-                    ps.setString(3, inventoryJson);
-                    ps.executeUpdate();
+                try (PreparedStatement players = conn.prepareStatement(SET_INVENTORY_PLAYER);
+                     PreparedStatement inventories = conn.prepareStatement(SET_INVENTORY);
+                     PreparedStatement hotbars = conn.prepareStatement(SET_HOTBAR_MANAGER)) {
+                    boolean anyHotbar = false;
+                    for (InventorySnapshot snapshot : byPlayer.values()) {
+                        players.setString(1, snapshot.playerUuid());
+                        players.setString(2, snapshot.displayName());
+                        players.addBatch();
+
+                        inventories.setString(1, snapshot.playerUuid());
+                        inventories.setInt(2, snapshot.inventoryVersion());
+                        bindPayload(inventories, 3, snapshot.inventoryJson());
+                        inventories.addBatch();
+
+                        if (snapshot.hotbarManagerJson() != null) {
+                            bindPayload(hotbars, 1, snapshot.hotbarManagerJson());
+                            hotbars.setString(3, snapshot.playerUuid());
+                            hotbars.addBatch();
+                            anyHotbar = true;
+                        }
+                    }
+                    players.executeBatch();
+                    inventories.executeBatch();
+                    if (anyHotbar) {
+                        hotbars.executeBatch();
+                    }
                 }
                 conn.commit();
                 return true;
@@ -94,11 +375,10 @@ public class InventorySyncServiceImpl implements InventorySyncService {
             ps.setString(1, playerUuid);
             try (ResultSet rs = ps.executeQuery()) {
                 if (rs.next()) {
-                    String json = rs.getString(1);
-                    return Optional.ofNullable(json);
+                    return Optional.ofNullable(readPayload(rs, 1));
                 }
             }
-        } catch (SQLException e) {
+        } catch (SQLException | IllegalArgumentException e) {
             // Log and return empty
         }
         return Optional.empty();
@@ -108,8 +388,8 @@ public class InventorySyncServiceImpl implements InventorySyncService {
     public boolean setHotbarManager(String playerUuid, String hotbarManagerJson) {
         try (Connection conn = databaseManager.getConnection();
              PreparedStatement ps = conn.prepareStatement(SET_HOTBAR_MANAGER)) {
-            ps.setString(1, hotbarManagerJson);
-            ps.setString(2, playerUuid);
+            bindPayload(ps, 1, hotbarManagerJson);
+            ps.setString(3, playerUuid);
             return ps.executeUpdate() > 0;
         } catch (SQLException e) {
             return false;
@@ -136,11 +416,38 @@ public class InventorySyncServiceImpl implements InventorySyncService {
         return Optional.empty();
     }
 
+    /**
+     * Load inventory, hotbar manager and player info in one round trip. Unlike the API methods this
+     * throws on error, so callers that cache the result never mistake a failure for "no data".
+     *
+     * @throws SQLException             on database error
+     * @throws IllegalArgumentException if a compressed payload is corrupt
+     */
+    public PlayerState loadPlayerState(String playerUuid) throws SQLException {
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement ps = conn.prepareStatement(GET_PLAYER_STATE)) {
+            ps.setString(1, playerUuid);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return PlayerState.EMPTY;
+                Timestamp ts = rs.getTimestamp(3);
+                PlayerInfo player = new org.hysync.database.api.PlayerInfo(rs.getString(1), rs.getString(2),
+                    ts != null ? ts.toInstant() : Instant.EPOCH);
+                return new PlayerState(Optional.ofNullable(readPayload(rs, 4)), Optional.ofNullable(readPayload(rs, 6)),
+                    Optional.of(player));
+            }
+        }
+    }
+
     @Override
     public Optional<String> getCurrentServerId(String playerUuid) {
+        if (sessionDirectory != null && sessionDirectory.isAvailable()) {
+            return sessionDirectory.getServerId(playerUuid);
+        }
         try (Connection conn = databaseManager.getConnection();
              PreparedStatement ps = conn.prepareStatement(GET_CURRENT_SERVER)) {
             ps.setString(1, playerUuid);
+            ps.setInt(2, sessionLeaseSeconds);
+            ps.setInt(3, sessionLeaseSeconds);
             try (ResultSet rs = ps.executeQuery()) {
                 if (rs.next()) {
                     String serverId = rs.getString(1);
@@ -157,30 +464,23 @@ public class InventorySyncServiceImpl implements InventorySyncService {
     public boolean claimSession(String playerUuid, String serverId) {
         if (playerUuid == null || serverId == null) return false;
         try (Connection conn = databaseManager.getConnection();
-             PreparedStatement sel = conn.prepareStatement(GET_CURRENT_SERVER)) {
-            sel.setString(1, playerUuid);
-            String current = null;
-            try (ResultSet rs = sel.executeQuery()) {
-                if (rs.next()) current = rs.getString(1);
-            }
-            if (current == null) {
-                try (PreparedStatement ins = conn.prepareStatement(INSERT_SESSION)) {
-                    ins.setString(1, playerUuid);
-                    ins.setString(2, serverId);
-                    ins.executeUpdate();
+             PreparedStatement ps = conn.prepareStatement(CLAIM_SESSION)) {
+            ps.setString(1, playerUuid);
+            ps.setString(2, serverId);
+            ps.setInt(3, sessionLeaseSeconds);
+            ps.setInt(4, sessionLeaseSeconds);
+            ps.setString(5, playerUuid);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next() && serverId.equals(rs.getString(1))) {
+                    ownedSessions.computeIfAbsent(serverId, k -> new ConcurrentHashMap<>())
+                        .put(playerUuid, claimSequence.incrementAndGet());
+                    if (sessionDirectory != null) {
+                        sessionDirectory.claimed(playerUuid, serverId);
+                    }
                     return true;
                 }
+                return false;
             }
-            if (current.equals(serverId)) {
-                try (PreparedStatement upd = conn.prepareStatement(
-                    "UPDATE player_sessions SET updated_at = NOW() WHERE player_uuid = ? AND server_id = ?")) {
-                    upd.setString(1, playerUuid);
-                    upd.setString(2, serverId);
-                    upd.executeUpdate();
-                }
-                return true;
-            }
-            return false;
         } catch (SQLException e) {
             return false;
         }
@@ -189,13 +489,150 @@ public class InventorySyncServiceImpl implements InventorySyncService {
     @Override
     public void releaseSession(String playerUuid, String serverId) {
         if (playerUuid == null || serverId == null) return;
+        Map<String, Long> owned = ownedSessions.get(serverId);
+        if (owned != null) {
+            owned.remove(playerUuid);
+        }
         try (Connection conn = databaseManager.getConnection();
              PreparedStatement ps = conn.prepareStatement(DELETE_SESSION)) {
             ps.setString(1, playerUuid);
             ps.setString(2, serverId);
             ps.executeUpdate();
+            if (sessionDirectory != null) {
+                sessionDirectory.released(playerUuid, serverId);
+            }
         } catch (SQLException e) {
             // ignore
         }
     }
+
+    @Override
+    public Set<String> getOnlinePlayers(String serverId) {
+        if (serverId == null) return Collections.emptySet();
+        if (sessionDirectory != null && sessionDirectory.isAvailable()) {
+            return sessionDirectory.getPlayers(serverId);
+        }
+        Set<String> players = new HashSet<>();
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement ps = conn.prepareStatement(GET_ONLINE_PLAYERS)) {
+            ps.setString(1, serverId);
+            ps.setInt(2, sessionLeaseSeconds);
+            ps.setInt(3, sessionLeaseSeconds);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    players.add(rs.getString(1));
+                }
+            }
+        } catch (SQLException e) {
+            return Collections.emptySet();
+        }
+        return players;
+    }
+
+    @Override
+    public Map<String, Integer> getOnlineCounts() {
+        if (sessionDirectory != null && sessionDirectory.isAvailable()) {
+            return sessionDirectory.getCounts();
+        }
+        Map<String, Integer> counts = new HashMap<>();
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement ps = conn.prepareStatement(GET_ONLINE_COUNTS)) {
+            ps.setInt(1, sessionLeaseSeconds);
+            ps.setInt(2, sessionLeaseSeconds);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    counts.put(rs.getString(1), rs.getInt(2));
+                }
+            }
+        } catch (SQLException e) {
+            return Collections.emptyMap();
+        }
+        return counts;
+    }
+
+    /**
+     * Stop renewing a session claimed through this instance without releasing it (e.g. while its
+     * final inventory is still unwritten). It stays claimed until released or, with a lease, expired.
+     */
+    public void stopRenewing(String playerUuid, String serverId) {
+        Map<String, Long> owned = ownedSessions.get(serverId);
+        if (owned != null) {
+            owned.remove(playerUuid);
+        }
+    }
+
+    /**
+     * Renew {@code updated_at} of every session claimed through this instance, with one statement
+     * per server id. Sessions that are no longer ours (released elsewhere, reaped or taken over after
+     * the lease expired) stop being renewed.
+     *
+     * @return number of sessions renewed
+     * @throws SQLException on database error (nothing is forgotten; the next heartbeat retries)
+     */
+    public int heartbeatSessions() throws SQLException {
+        int renewed = 0;
+        for (Map.Entry<String, Map<String, Long>> server : ownedSessions.entrySet()) {
+            Map<String, Long> snapshot = Map.copyOf(server.getValue());
+            if (snapshot.isEmpty()) continue;
+            Set<String> alive = new HashSet<>();
+            try (Connection conn = databaseManager.getConnection();
+                 PreparedStatement ps = conn.prepareStatement(HEARTBEAT_SESSIONS)) {
+                ps.setString(1, server.getKey());
+                ps.setArray(2, conn.createArrayOf("text", snapshot.keySet().toArray()));
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        alive.add(rs.getString(1));
+                    }
+                }
+            }
+            renewed += alive.size();
+            for (Map.Entry<String, Long> session : snapshot.entrySet()) {
+                if (!alive.contains(session.getKey())) {
+                    // Only forget the claim we sent; a re-claim since the snapshot has a newer sequence.
+                    server.getValue().remove(session.getKey(), session.getValue());
+                }
+            }
+        }
+        return renewed;
+    }
+
+    /**
+     * Delete sessions whose owning server stopped renewing them for longer than the lease
+     * (e.g. after a crash). Does nothing when the lease is 0.
+     *
+     * @return number of sessions deleted
+     * @throws SQLException on database error
+     */
+    public int reapExpiredSessions() throws SQLException {
+        if (sessionLeaseSeconds <= 0) return 0;
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement ps = conn.prepareStatement(REAP_SESSIONS)) {
+            ps.setInt(1, sessionLeaseSeconds);
+            return ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Bind a JSON payload to its (jsonb, bytea) parameter pair at {@code jsonIndex} and {@code jsonIndex + 1}:
+     * compressed into the blob when enabled, otherwise as JSONB. A null payload binds both as null.
+     */
+    private void bindPayload(PreparedStatement ps, int jsonIndex, @Nullable String json) throws SQLException {
+        if (json != null && compress) {
+            ps.setNull(jsonIndex, Types.VARCHAR);
+            ps.setBytes(jsonIndex + 1, JsonCompression.compress(json));
+        } else {
+            ps.setString(jsonIndex, json);
+            ps.setNull(jsonIndex + 1, Types.BINARY);
+        }
+    }
+
+    /** Read a (jsonb, bytea) column pair starting at {@code jsonIndex}, whichever format the row uses. */
+    @Nullable
+    static String readPayload(ResultSet rs, int jsonIndex) throws SQLException {
+        byte[] blob = rs.getBytes(jsonIndex + 1);
+        if (blob != null) {
+            return JsonCompression.decompress(blob);
+        }
+        return rs.getString(jsonIndex);
+    }
 }
@@ -0,0 +1,112 @@
+package org.hysync.database.core;
+
+import com.hypixel.hytale.logger.HytaleLogger;
+import org.hysync.database.api.ItemSearchService;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Item search over player_inventory and player_stashes. The WHERE clauses repeat the V11 index
+ * expressions verbatim so the planner can use them; results come through a cursor (autocommit
+ * off plus a fetch size), so only one batch of rows is in memory at a time.
+ */
+public class ItemSearchServiceImpl implements ItemSearchService {
+
+    private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+    /** Rows fetched per cursor round trip. */
+    private static final int FETCH_SIZE = 200;
+
+    // Index expressions from V11; must match exactly.
+    private static final String INVENTORY_ITEM_IDS = "jsonb_path_query_array(i.inventory_json, 'lax $.*.Items.*.Id')";
+    private static final String STASH_ITEM_IDS = "jsonb_path_query_array(s.items_json, 'strict $.** ? (exists (@.Id)).Id')";
+
+    private static final String FIND_HOLDERS =
+        "SELECT i.player_uuid, 'INVENTORY' AS location, NULL AS stash_name, " +
+        "(SELECT COALESCE(SUM(COALESCE((x ->> 'Quantity')::bigint, 1)), 0) " +
+        " FROM jsonb_path_query(i.inventory_json, 'lax $.*.Items.* ? (@.Id == $id)', jsonb_build_object('id', ?::text)) x) AS quantity " +
+        "FROM player_inventory i WHERE " + INVENTORY_ITEM_IDS + " @> jsonb_build_array(?::text) " +
+        "UNION ALL " +
+        "SELECT s.player_uuid, 'STASH', s.stash_name, " +
+        "(SELECT COALESCE(SUM(COALESCE((x ->> 'Quantity')::bigint, 1)), 0) " +
+        " FROM jsonb_path_query(s.items_json, 'strict $.** ? (@.Id == $id)', jsonb_build_object('id', ?::text)) x) " +
+        "FROM player_stashes s WHERE " + STASH_ITEM_IDS + " @> jsonb_build_array(?::text) " +
+        "LIMIT ?";
+
+    private final DatabaseManager databaseManager;
+
+    public ItemSearchServiceImpl(DatabaseManager databaseManager) {
+        this.databaseManager = databaseManager;
+    }
+
+    @Override
+    public Stream<ItemHolder> findHolders(String itemId, int limit) {
+        if (itemId == null || limit <= 0) return Stream.empty();
+        Connection conn = null;
+        try {
+            conn = databaseManager.getConnection();
+            // The driver only uses a cursor (instead of reading every row) inside a transaction.
+            conn.setAutoCommit(false);
+            PreparedStatement ps = conn.prepareStatement(FIND_HOLDERS);
+            ps.setFetchSize(FETCH_SIZE);
+            ps.setString(1, itemId);
+            ps.setString(2, itemId);
+            ps.setString(3, itemId);
+            ps.setString(4, itemId);
+            ps.setInt(5, limit);
+            ResultSet rs = ps.executeQuery();
+            Connection open = conn;
+            return StreamSupport.stream(new HolderSpliterator(rs), false)
+                .onClose(() -> close(open, ps, rs));
+        } catch (SQLException e) {
+            LOGGER.atWarning().withCause(e).log("[ItemSearch] findHolders failed for %s", itemId);
+            if (conn != null) {
+                close(conn, null, null);
+            }
+            return Stream.empty();
+        }
+    }
+
+    private static void close(Connection conn, AutoCloseable ps, AutoCloseable rs) {
+        try (conn; ps; rs) {
+            // Read-only transaction: nothing to keep.
+            conn.rollback();
+            conn.setAutoCommit(true);
+        } catch (Exception e) {
+            LOGGER.atWarning().withCause(e).log("[ItemSearch] Failed to close cursor");
+        }
+    }
+
+    /** Reads the next row on demand; a database error ends the stream with a log entry. */
+    private static final class HolderSpliterator extends Spliterators.AbstractSpliterator<ItemHolder> {
+        private final ResultSet rs;
+
+        HolderSpliterator(ResultSet rs) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.rs = rs;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super ItemHolder> action) {
+            try {
+                if (!rs.next()) return false;
+                action.accept(new ItemHolder(
+                    rs.getString(1),
+                    Location.valueOf(rs.getString(2)),
+                    rs.getString(3),
+                    rs.getLong(4)));
+                return true;
+            } catch (SQLException e) {
+                LOGGER.atWarning().withCause(e).log("[ItemSearch] Cursor read failed; results are incomplete");
+                return false;
+            }
+        }
+    }
+}
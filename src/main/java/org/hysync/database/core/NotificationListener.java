@@ -0,0 +1,181 @@
+package org.hysync.database.core;
+
+import com.hypixel.hytale.logger.HytaleLogger;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * PostgreSQL LISTEN/NOTIFY receiver on a dedicated connection (outside the Hikari pool).
+ * <p>
+ * Caches must only trust their contents while {@link #isListening(String)} is true for their
+ * channel: notifications sent
+ * while the connection is down are lost, so every reconnect runs the {@link #onReconnect} hooks
+ * (typically "invalidate everything") before listening resumes.
+ */
+public class NotificationListener {
+
+    private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+    private static final Pattern CHANNEL_NAME = Pattern.compile("[a-z_][a-z0-9_]*");
+    private static final int POLL_TIMEOUT_MS = 500;
+    private static final long MAX_BACKOFF_MS = 30_000;
+
+    private final DatabaseManager databaseManager;
+    private final Map<String, List<Consumer<String>>> handlers = new ConcurrentHashMap<>();
+    private final Queue<String> newChannels = new ConcurrentLinkedQueue<>();
+    private final List<Runnable> reconnectHooks = new CopyOnWriteArrayList<>();
+    private final Map<String, List<Runnable>> listenHooks = new ConcurrentHashMap<>();
+    private final Set<String> activeChannels = ConcurrentHashMap.newKeySet();
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile boolean listening;
+
+    public NotificationListener(DatabaseManager databaseManager) {
+        this.databaseManager = databaseManager;
+        this.thread = new Thread(this::run, "HysyncDB-listener");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Receive the payload of every NOTIFY on {@code channel}. Handlers run on the listener thread
+     * and must be quick (cache eviction, not database work).
+     */
+    public void subscribe(String channel, Consumer<String> handler) {
+        if (!CHANNEL_NAME.matcher(channel).matches()) {
+            throw new IllegalArgumentException("Invalid channel name: " + channel);
+        }
+        handlers.computeIfAbsent(channel, k -> {
+            newChannels.add(k);
+            return new CopyOnWriteArrayList<>();
+        }).add(handler);
+    }
+
+    /**
+     * Like {@link #subscribe(String, Consumer)}, plus {@code onListen} runs on the listener thread
+     * each time LISTEN on {@code channel} becomes active (first connect and every reconnect), before
+     * any notification for it is dispatched and before {@link #isListening(String)} turns true. Use
+     * it to load a snapshot that the notifications then keep current; it may run a short query.
+     * Throwing from it counts as a lost connection and is retried.
+     */
+    public void subscribe(String channel, Consumer<String> handler, Runnable onListen) {
+        listenHooks.computeIfAbsent(channel, k -> new CopyOnWriteArrayList<>()).add(onListen);
+        boolean known = handlers.containsKey(channel);
+        subscribe(channel, handler);
+        if (known) {
+            // Already listening for another subscriber: LISTEN again (a no-op) so the hook still runs.
+            newChannels.add(channel);
+        }
+    }
+
+    /** Run after every reconnect, before {@link #isListening(String)} turns true again. */
+    public void onReconnect(Runnable hook) {
+        reconnectHooks.add(hook);
+    }
+
+    /** True while notifications are being received; false while (re)connecting. */
+    public boolean isListening() {
+        return listening;
+    }
+
+    /** True once LISTEN on {@code channel} is active on the current connection. */
+    public boolean isListening(String channel) {
+        return listening && activeChannels.contains(channel);
+    }
+
+    public void close() {
+        running = false;
+        listening = false;
+        thread.interrupt();
+        try {
+            thread.join(POLL_TIMEOUT_MS * 4L);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        long backoff = 1_000;
+        while (running) {
+            try (Connection conn = databaseManager.openDedicatedConnection();
+                 Statement stmt = conn.createStatement()) {
+                // Channels queued meanwhile are LISTENed again below; that is a no-op.
+                Set<String> channels = Set.copyOf(handlers.keySet());
+                for (String channel : channels) {
+                    stmt.execute("LISTEN " + channel);
+                }
+                for (Runnable hook : reconnectHooks) {
+                    hook.run();
+                }
+                for (String channel : channels) {
+                    runListenHooks(channel);
+                }
+                activeChannels.addAll(channels);
+                listening = true;
+                backoff = 1_000;
+                PGConnection pg = conn.unwrap(PGConnection.class);
+                while (running) {
+                    String channel;
+                    while ((channel = newChannels.poll()) != null) {
+                        stmt.execute("LISTEN " + channel);
+                        runListenHooks(channel);
+                        activeChannels.add(channel);
+                    }
+                    // Throws if the connection is broken, which drops us into reconnect.
+                    PGNotification[] notifications = pg.getNotifications(POLL_TIMEOUT_MS);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            dispatch(notification);
+                        }
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (running) {
+                    LOGGER.atWarning().withCause(e).log("[NotificationListener] Connection lost; reconnecting in %d ms", backoff);
+                }
+            } finally {
+                listening = false;
+                activeChannels.clear();
+            }
+            if (!running) break;
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                break;
+            }
+            backoff = Math.min(MAX_BACKOFF_MS, backoff * 2);
+        }
+    }
+
+    private void runListenHooks(String channel) {
+        List<Runnable> hooks = listenHooks.get(channel);
+        if (hooks == null) return;
+        for (Runnable hook : hooks) {
+            hook.run();
+        }
+    }
+
+    private void dispatch(PGNotification notification) {
+        List<Consumer<String>> channelHandlers = handlers.get(notification.getName());
+        if (channelHandlers == null) return;
+        for (Consumer<String> handler : channelHandlers) {
+            try {
+                handler.accept(notification.getParameter());
+            } catch (RuntimeException e) {
+                LOGGER.atWarning().withCause(e).log("[NotificationListener] Handler failed on %s", notification.getName());
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package org.hysync.database.core;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.hysync.database.api.InventorySyncService;
+import org.hysync.database.api.PrefetchedPlayer;
+import org.hysync.database.api.StashSyncService.StashSummary;
+import org.hysync.database.repository.StashDAO;
+import org.hysync.database.repository.VoteDAO;
+
+import javax.annotation.Nullable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Loads a player's inventory, hotbar, players row, session, stash summaries, stash limit and vote
+ * total in one query, for the join path. Results are pushed into the inventory, stash and vote total
+ * caches. Stash items are not loaded; they are fetched when a stash is opened. The session needs no
+ * cache of its own: while the {@link SessionDirectory} is available it already answers from memory.
+ */
+public class PlayerPrefetcher {
+
+    // One row for any UUID (k), with every per-player lookup as a join or scalar subquery.
+    // The first %s is the vote total (see VoteDAO#totalVotesExpression), the second the stash
+    // revision column (see StashDAO#revisionColumn). Sessions past the lease count as free, as in
+    // InventorySyncServiceImpl (params: lease seconds twice; <= 0 disables expiry).
+    private static final String PREFETCH =
+        "SELECT p.uuid, p.display_name, p.updated_at, " +
+        "i.inventory_json, i.inventory_blob, i.hotbar_manager_json, i.hotbar_manager_blob, " +
+        "(SELECT s.server_id FROM player_sessions s WHERE s.player_uuid = k.uuid " +
+        "AND (? <= 0 OR s.updated_at >= NOW() - ? * INTERVAL '1 second')) AS server_id, " +
+        "(SELECT ss.max_stashes FROM player_stash_settings ss WHERE ss.player_uuid = k.uuid) AS max_stashes, " +
+        "%s AS total_votes, " +
+        "(SELECT json_agg(json_build_object('name', st.stash_name, 'size', st.stash_size, 'updated_at', st.updated_at, " +
+        "'item_count', " + StashDAO.ITEM_COUNT + ", 'revision', %s)) " +
+        " FROM player_stashes st WHERE st.player_uuid = k.uuid) AS stashes " +
+        "FROM (SELECT ?::text AS uuid) k " +
+        "LEFT JOIN players p ON p.uuid = k.uuid " +
+        "LEFT JOIN player_inventory i ON i.player_uuid = k.uuid";
+
+    private final DatabaseManager databaseManager;
+    @Nullable
+    private final CachingInventorySyncService inventoryCache;
+    private final StashSyncServiceImpl stashService;
+    private final VoteSyncServiceImpl voteService;
+    private final int sessionLeaseSeconds;
+    private final String prefetchSql;
+
+    /**
+     * @param sessionLeaseSeconds the session lease of {@link InventorySyncServiceImpl}; 0 = never expire
+     */
+    public PlayerPrefetcher(DatabaseManager databaseManager, @Nullable CachingInventorySyncService inventoryCache,
+                            StashSyncServiceImpl stashService, VoteSyncServiceImpl voteService, int sessionLeaseSeconds) {
+        this.databaseManager = databaseManager;
+        this.inventoryCache = inventoryCache;
+        this.stashService = stashService;
+        this.voteService = voteService;
+        this.sessionLeaseSeconds = Math.max(0, sessionLeaseSeconds);
+        VoteDAO votes = new VoteDAO(databaseManager.hasTrigger(VoteDAO.TOTALS_TRIGGER));
+        this.prefetchSql = String.format(PREFETCH, votes.totalVotesExpression("k.uuid"), stashService.revisionColumn());
+    }
+
+    /**
+     * Load and cache everything for one player in a single round trip.
+     *
+     * @throws SQLException on database error (nothing is cached)
+     */
+    public PrefetchedPlayer prefetch(String playerUuid) throws SQLException {
+        long inventoryStamp = inventoryCache != null ? inventoryCache.stamp(playerUuid) : 0;
+        long votesStamp = voteService.totalStamp(playerUuid);
+        PrefetchedPlayer result;
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement ps = conn.prepareStatement(prefetchSql)) {
+            ps.setInt(1, sessionLeaseSeconds);
+            ps.setInt(2, sessionLeaseSeconds);
+            ps.setString(3, playerUuid);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                Optional<InventorySyncService.PlayerInfo> player = Optional.empty();
+                if (rs.getString("uuid") != null) {
+                    Timestamp ts = rs.getTimestamp("updated_at");
+                    player = Optional.of(new org.hysync.database.api.PlayerInfo(rs.getString("uuid"),
+                        rs.getString("display_name"), ts != null ? ts.toInstant() : Instant.EPOCH));
+                }
+                result = new PrefetchedPlayer(
+                    playerUuid,
+                    player,
+                    Optional.ofNullable(InventorySyncServiceImpl.readPayload(rs, 4)),
+                    Optional.ofNullable(InventorySyncServiceImpl.readPayload(rs, 6)),
+                    Optional.ofNullable(rs.getString("server_id")),
+                    parseStashes(rs.getString("stashes")),
+                    rs.getInt("max_stashes"),
+                    rs.getInt("total_votes"));
+            }
+        }
+        if (inventoryCache != null) {
+            inventoryCache.prime(playerUuid, new PlayerState(result.inventory(), result.hotbarManager(), result.player()),
+                inventoryStamp);
+        }
+        stashService.primeCache(playerUuid, result.stashes(), result.maxStashes());
+        voteService.primeTotal(playerUuid, result.totalVotes(), votesStamp);
+        return result;
+    }
+
+    private static List<StashSummary> parseStashes(@Nullable String json) {
+        List<StashSummary> stashes = new ArrayList<>();
+        if (json == null) return stashes;
+        JsonArray array = JsonParser.parseString(json).getAsJsonArray();
+        for (JsonElement element : array) {
+            JsonObject stash = element.getAsJsonObject();
+            JsonElement updatedAt = stash.get("updated_at");
+            stashes.add(new StashSummary(
+                stash.get("name").getAsString(),
+                stash.get("size").getAsInt(),
+                updatedAt == null || updatedAt.isJsonNull() ? Instant.EPOCH
+                    : OffsetDateTime.parse(updatedAt.getAsString()).toInstant(),
+                stash.get("item_count").getAsInt(),
+                stash.get("revision").getAsLong()));
+        }
+        return stashes;
+    }
+}
@@ -0,0 +1,369 @@
+package org.hysync.database.core;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import org.hysync.database.api.StashSyncService.StashModel;
+import org.hysync.database.api.StashSyncService.StashSummary;
+
+import javax.annotation.Nullable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.UnaryOperator;
+
+/**
+ * Cached stashes of one player, keyed by stash name.
+ * <p>
+ * Summaries (name, size, item count) and item payloads are cached separately: the stash menu only
+ * needs summaries, and a stash's items are loaded when it is opened. {@code summariesComplete}
+ * means every stash the player owns has a summary; {@code complete} means every payload is loaded
+ * too, so {@code getStashes} can be answered from memory. Lookups that found nothing are
+ * remembered until a deadline (negative caching) unless a complete listing already proves absence.
+ */
+final class PlayerStashes {
+
+    private final Map<String, StashModel> stashes = new LinkedHashMap<>();
+    private final Map<String, StashSummary> summaries = new LinkedHashMap<>();
+    private boolean complete;
+    private boolean summariesComplete;
+    // Local writes so far; a full load only replaces the contents if none happened meanwhile.
+    private long writes;
+    @Nullable
+    private Integer maxStashes;
+    // Stash name -> System.nanoTime() deadline until which "no such stash" is trusted.
+    private final Map<String, Long> missing = new HashMap<>();
+    private long maxStashesMissingUntil;
+    private boolean maxStashesMissing;
+
+    static PlayerStashes loaded(List<StashModel> stashes, @Nullable Integer maxStashes) {
+        PlayerStashes cached = new PlayerStashes();
+        cached.replace(stashes);
+        cached.maxStashes = maxStashes;
+        return cached;
+    }
+
+    static PlayerStashes summarized(List<StashSummary> summaries, @Nullable Integer maxStashes) {
+        PlayerStashes cached = new PlayerStashes();
+        cached.replaceSummaries(summaries);
+        cached.maxStashes = maxStashes;
+        return cached;
+    }
+
+    @Nullable
+    synchronized StashModel get(String name) {
+        return stashes.get(name);
+    }
+
+    /**
+     * @return the stash with items, {@code Optional.empty()} if it is known not to exist, or null
+     * if its items are not cached
+     */
+    @Nullable
+    synchronized Optional<StashModel> lookup(String name, long now) {
+        StashModel stash = stashes.get(name);
+        if (stash != null) return Optional.of(stash);
+        if (complete || (summariesComplete && !summaries.containsKey(name))) return Optional.empty();
+        Long until = missing.get(name);
+        if (until != null) {
+            if (now - until < 0) return Optional.empty();
+            missing.remove(name);
+        }
+        return null;
+    }
+
+    /**
+     * Record the result of loading one stash, unless a write happened since {@code expectedWrites}.
+     *
+     * @param missingUntil nanoTime deadline for remembering that the stash does not exist
+     * @return true if recorded
+     */
+    synchronized boolean loadedIfUnchanged(String name, Optional<StashModel> loaded, long missingUntil, long expectedWrites) {
+        if (writes != expectedWrites) return false;
+        if (loaded.isPresent()) {
+            stashes.put(name, loaded.get());
+        } else if (!complete) {
+            missing.put(name, missingUntil);
+        }
+        return true;
+    }
+
+    synchronized void put(StashModel stash) {
+        stashes.put(stash.name(), stash);
+        summaries.put(stash.name(), summaryOf(stash, Instant.now()));
+        missing.remove(stash.name());
+        writes++;
+    }
+
+    /**
+     * Record the revision a buffered write was stored at, if {@code written} is still the cached
+     * version. Not counted as a write: the cache already held this content.
+     */
+    synchronized void revised(StashModel written, long revision) {
+        if (stashes.get(written.name()) != written) return;
+        stashes.put(written.name(), new StashModel(written.ownerUuid(), written.name(), written.size(),
+            written.itemsJson(), revision));
+        StashSummary summary = summaries.get(written.name());
+        if (summary != null) {
+            summaries.put(written.name(), new StashSummary(summary.name(), summary.size(), summary.updatedAt(),
+                summary.itemCount(), revision));
+        }
+    }
+
+    /**
+     * Apply a slot update that was written to the database at {@code revision}. The cached payload
+     * is changed in place if it is the version the update was applied to; otherwise (or if its
+     * revision is unknown) it is dropped so the next read loads the stored one.
+     *
+     * @param revisions whether revisions are tracked (V8); without them the cached copy is trusted
+     */
+    synchronized void slotsChanged(String name, UnaryOperator<String> change, long revision, boolean revisions) {
+        StashModel stash = stashes.get(name);
+        if (stash != null && (!revisions || stash.revision() + 1 == revision)) {
+            put(new StashModel(stash.ownerUuid(), name, stash.size(), change.apply(stash.itemsJson()), revision));
+            return;
+        }
+        writes++;
+        stashes.remove(name);
+        complete = false;
+        if (summaries.remove(name) != null) {
+            summariesComplete = false;
+        }
+    }
+
+    synchronized void remove(String name) {
+        stashes.remove(name);
+        summaries.remove(name);
+        writes++;
+    }
+
+    synchronized long writes() {
+        return writes;
+    }
+
+    /**
+     * Replace the contents with a full load, unless a write happened since {@code expectedWrites}
+     * was read (the load might predate it).
+     *
+     * @return true if replaced
+     */
+    synchronized boolean completeIfUnchanged(List<StashModel> loaded, long expectedWrites) {
+        if (writes != expectedWrites) return false;
+        replace(loaded);
+        return true;
+    }
+
+    /**
+     * Replace the summaries with a metadata load, unless a write happened since
+     * {@code expectedWrites}. Cached payloads are kept.
+     *
+     * @return true if replaced
+     */
+    synchronized boolean summariesCompleteIfUnchanged(List<StashSummary> loaded, long expectedWrites) {
+        if (writes != expectedWrites) return false;
+        replaceSummaries(loaded);
+        stashes.keySet().retainAll(summaries.keySet());
+        return true;
+    }
+
+    /**
+     * Cached payloads that must be reloaded to match a revision listing: those whose revision
+     * differs, or every listed one if revisions are not tracked (before V8). Deleted stashes are
+     * not included; {@link #revalidatedIfUnchanged} drops them.
+     */
+    synchronized List<String> stalePayloads(Map<String, Long> revisions, boolean revisionsTracked) {
+        List<String> stale = new ArrayList<>();
+        for (StashModel stash : stashes.values()) {
+            Long revision = revisions.get(stash.name());
+            if (revision != null && (!revisionsTracked || revision != stash.revision())) {
+                stale.add(stash.name());
+            }
+        }
+        return stale;
+    }
+
+    /**
+     * Bring the entry in line with a full revision listing, unless a write happened since
+     * {@code expectedWrites}: payloads still at the listed revision are kept, {@code reloaded}
+     * replaces the stale ones and stashes that no longer exist are dropped.
+     *
+     * @return true if applied
+     */
+    synchronized boolean revalidatedIfUnchanged(Map<String, Long> revisions, List<StashModel> reloaded,
+                                                long expectedWrites, boolean revisionsTracked) {
+        if (writes != expectedWrites) return false;
+        stashes.keySet().retainAll(revisions.keySet());
+        for (StashModel stash : reloaded) {
+            stashes.put(stash.name(), stash);
+        }
+        retainMatchingSummaries(revisions, revisionsTracked);
+        complete = stashes.keySet().equals(revisions.keySet());
+        missing.keySet().removeAll(revisions.keySet());
+        return true;
+    }
+
+    /**
+     * Take a metadata load (join prefetch) without discarding payloads it proves current, i.e. those
+     * at the revision in their summary. Counts as a write so an older load in flight cannot undo it.
+     */
+    synchronized void primed(List<StashSummary> loaded, @Nullable Integer maxStashes, boolean revisionsTracked) {
+        writes++;
+        replaceSummaries(loaded);
+        if (revisionsTracked) {
+            stashes.entrySet().removeIf(e -> {
+                StashSummary summary = summaries.get(e.getKey());
+                return summary == null || summary.revision() != e.getValue().revision();
+            });
+        } else {
+            stashes.clear();
+        }
+        complete = stashes.size() == summaries.size();
+        missing.keySet().removeAll(summaries.keySet());
+        this.maxStashes = maxStashes;
+        this.maxStashesMissing = false;
+    }
+
+    /**
+     * Rename in place, keeping the listing order. The payload and the summary are each renamed if
+     * cached; anything cached under {@code newName} is replaced either way.
+     *
+     * @param revision the stored revision after the rename (0 without V8)
+     */
+    synchronized void rename(String oldName, String newName, long revision) {
+        writes++;
+        StashModel stash = stashes.get(oldName);
+        if (stash != null) {
+            renameKey(stashes, oldName, newName, new StashModel(stash.ownerUuid(), newName, stash.size(),
+                stash.itemsJson(), revision));
+        } else {
+            stashes.remove(newName);
+            // The old stash existed, so a listing without it was stale.
+            complete = false;
+        }
+        StashSummary summary = summaries.get(oldName);
+        if (summary != null) {
+            renameKey(summaries, oldName, newName, new StashSummary(newName, summary.size(), Instant.now(),
+                summary.itemCount(), revision));
+        } else {
+            summaries.remove(newName);
+            summariesComplete = false;
+        }
+        missing.remove(newName);
+    }
+
+    /** @return every stash, or null if this entry was never fully loaded */
+    @Nullable
+    synchronized List<StashModel> listIfComplete() {
+        return complete ? new ArrayList<>(stashes.values()) : null;
+    }
+
+    /** @return every stash's summary, or null if the listing was never loaded */
+    @Nullable
+    synchronized List<StashSummary> summariesIfComplete() {
+        return summariesComplete ? new ArrayList<>(summaries.values()) : null;
+    }
+
+    @Nullable
+    synchronized Integer maxStashes() {
+        return maxStashes;
+    }
+
+    /** True while "no settings row" is remembered (getMaxStashes answers 0 then). */
+    synchronized boolean isMaxStashesMissing(long now) {
+        return maxStashesMissing && now - maxStashesMissingUntil < 0;
+    }
+
+    synchronized void setMaxStashes(int maxStashes) {
+        this.maxStashes = maxStashes;
+        this.maxStashesMissing = false;
+        writes++;
+    }
+
+    /**
+     * Record a loaded limit, unless a write happened since {@code expectedWrites}; null means
+     * there is no settings row.
+     */
+    synchronized void loadedMaxStashesIfUnchanged(@Nullable Integer maxStashes, long missingUntil, long expectedWrites) {
+        if (writes != expectedWrites) return;
+        this.maxStashes = maxStashes;
+        this.maxStashesMissing = maxStashes == null;
+        this.maxStashesMissingUntil = missingUntil;
+    }
+
+    /** Cache weight: one per loaded payload or remembered miss, plus the entry and its summaries. */
+    synchronized int weight() {
+        return 1 + stashes.size() + missing.size() + summaries.size() / 16;
+    }
+
+    /**
+     * Non-null entries in an items document, the same way {@code StashDAO.ITEM_COUNT} counts them:
+     * array elements or object values.
+     */
+    static int countItems(@Nullable String itemsJson) {
+        if (itemsJson == null) return 0;
+        JsonElement items = JsonParser.parseString(itemsJson);
+        int count = 0;
+        if (items.isJsonArray()) {
+            for (JsonElement item : items.getAsJsonArray()) {
+                if (!item.isJsonNull()) count++;
+            }
+        } else if (items.isJsonObject()) {
+            for (Map.Entry<String, JsonElement> item : items.getAsJsonObject().entrySet()) {
+                if (!item.getValue().isJsonNull()) count++;
+            }
+        }
+        return count;
+    }
+
+    static StashSummary summaryOf(StashModel stash, Instant updatedAt) {
+        return new StashSummary(stash.name(), stash.size(), updatedAt, countItems(stash.itemsJson()), stash.revision());
+    }
+
+    /** A full load has no updated_at, so summaries are left to the next metadata load. */
+    private void replace(List<StashModel> loaded) {
+        stashes.clear();
+        for (StashModel stash : loaded) {
+            stashes.put(stash.name(), stash);
+        }
+        summaries.clear();
+        complete = true;
+        summariesComplete = false;
+    }
+
+    private void retainMatchingSummaries(Map<String, Long> revisions, boolean revisionsTracked) {
+        if (!revisionsTracked) {
+            summaries.clear();
+            summariesComplete = false;
+            return;
+        }
+        summaries.entrySet().removeIf(e -> {
+            Long revision = revisions.get(e.getKey());
+            return revision == null || revision != e.getValue().revision();
+        });
+        summariesComplete = summariesComplete && summaries.keySet().equals(revisions.keySet());
+    }
+
+    private void replaceSummaries(List<StashSummary> loaded) {
+        summaries.clear();
+        for (StashSummary summary : loaded) {
+            summaries.put(summary.name(), summary);
+        }
+        summariesComplete = true;
+    }
+
+    private static <V> void renameKey(Map<String, V> map, String oldKey, String newKey, V value) {
+        if (!map.containsKey(oldKey)) return;
+        Map<String, V> copy = new LinkedHashMap<>(map);
+        map.clear();
+        for (Map.Entry<String, V> entry : copy.entrySet()) {
+            if (entry.getKey().equals(oldKey)) {
+                map.put(newKey, value);
+            } else if (!entry.getKey().equals(newKey)) {
+                map.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+}
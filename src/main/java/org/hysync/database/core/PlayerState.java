@@ -0,0 +1,16 @@
+package org.hysync.database.core;
+
+import org.hysync.database.api.InventorySyncService;
+
+import java.util.Optional;
+
+/**
+ * Everything the inventory API reads for one player, loaded in a single query
+ * ({@link InventorySyncServiceImpl#loadPlayerState}). Unit of caching in {@link CachingInventorySyncService}.
+ */
+public record PlayerState(Optional<String> inventory, Optional<String> hotbarManager,
+                          Optional<InventorySyncService.PlayerInfo> player) {
+
+    /** Player not known to the database. */
+    public static final PlayerState EMPTY = new PlayerState(Optional.empty(), Optional.empty(), Optional.empty());
+}
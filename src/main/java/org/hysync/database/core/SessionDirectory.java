@@ -0,0 +1,126 @@
+package org.hysync.database.core;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory copy of player_sessions (player UUID to server id, plus players per server), loaded
+ * with one query whenever LISTEN on {@value #CHANNEL} becomes active and kept current by the V9
+ * notifications, so routing lookups and online counts cost no round trip.
+ * <p>
+ * Only trust it while {@link #isAvailable()}; callers fall back to querying player_sessions.
+ * Sessions of a crashed server stay listed until the reaper deletes them.
+ */
+public class SessionDirectory {
+
+    /** NOTIFY channel carrying every claim, takeover and release (see V9). */
+    public static final String CHANNEL = "hysync_sessions";
+    /** Trigger that must exist for the directory to stay current. */
+    public static final String TRIGGER = "trg_player_sessions_notify";
+
+    private static final String LOAD_SESSIONS = "SELECT player_uuid, server_id FROM player_sessions";
+
+    private final DatabaseManager databaseManager;
+    private final NotificationListener listener;
+    private final Map<String, String> serverByPlayer = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> playersByServer = new ConcurrentHashMap<>();
+
+    public SessionDirectory(DatabaseManager databaseManager, NotificationListener listener) {
+        this.databaseManager = databaseManager;
+        this.listener = listener;
+        listener.subscribe(CHANNEL, this::onNotification, this::reload);
+    }
+
+    /** True while the directory is loaded and receiving changes. */
+    public boolean isAvailable() {
+        return listener.isListening(CHANNEL);
+    }
+
+    public Optional<String> getServerId(String playerUuid) {
+        return Optional.ofNullable(serverByPlayer.get(playerUuid));
+    }
+
+    public Set<String> getPlayers(String serverId) {
+        Set<String> players = playersByServer.get(serverId);
+        return players != null ? Set.copyOf(players) : Set.of();
+    }
+
+    public Map<String, Integer> getCounts() {
+        Map<String, Integer> counts = new HashMap<>();
+        for (Map.Entry<String, Set<String>> server : playersByServer.entrySet()) {
+            int count = server.getValue().size();
+            if (count > 0) {
+                counts.put(server.getKey(), count);
+            }
+        }
+        return counts;
+    }
+
+    /** Record a session this server just claimed, ahead of its notification. */
+    public synchronized void claimed(String playerUuid, String serverId) {
+        String previous = serverByPlayer.put(playerUuid, serverId);
+        if (previous != null && !previous.equals(serverId)) {
+            removeFromServer(playerUuid, previous);
+        }
+        playersByServer.computeIfAbsent(serverId, k -> ConcurrentHashMap.newKeySet()).add(playerUuid);
+    }
+
+    /** Record a released session, unless the player is already listed on another server. */
+    public synchronized void released(String playerUuid, String serverId) {
+        if (serverByPlayer.remove(playerUuid, serverId)) {
+            removeFromServer(playerUuid, serverId);
+        }
+    }
+
+    private void removeFromServer(String playerUuid, String serverId) {
+        Set<String> players = playersByServer.get(serverId);
+        if (players != null) {
+            players.remove(playerUuid);
+            if (players.isEmpty()) {
+                playersByServer.remove(serverId);
+            }
+        }
+    }
+
+    private void onNotification(String payload) {
+        JsonObject change = JsonParser.parseString(payload).getAsJsonObject();
+        String playerUuid = change.get("uuid").getAsString();
+        String serverId = change.get("server").getAsString();
+        if ("release".equals(change.get("op").getAsString())) {
+            released(playerUuid, serverId);
+        } else {
+            claimed(playerUuid, serverId);
+        }
+    }
+
+    /** Runs on the listener thread right after LISTEN, so no change can slip in between. */
+    private void reload() {
+        Map<String, String> sessions = new HashMap<>();
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement ps = conn.prepareStatement(LOAD_SESSIONS);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                sessions.put(rs.getString(1), rs.getString(2));
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to load player_sessions", e);
+        }
+        synchronized (this) {
+            serverByPlayer.clear();
+            playersByServer.clear();
+            for (Map.Entry<String, String> session : sessions.entrySet()) {
+                claimed(session.getKey(), session.getValue());
+            }
+        }
+    }
+}
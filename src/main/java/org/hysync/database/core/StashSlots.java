@@ -0,0 +1,98 @@
+package org.hysync.database.core;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import javax.annotation.Nullable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Slot changes on a stash items document, the same way {@code hysync_apply_stash_slots} (V10) does
+ * them in the database: arrays are indexed by slot (padded with nulls), objects are keyed by the
+ * slot number, and a null item empties the slot.
+ */
+final class StashSlots {
+
+    private StashSlots() {
+    }
+
+    /**
+     * Parse caller input into slot changes.
+     *
+     * @param changes slot to item JSON; a null value empties the slot
+     * @return parsed changes (JsonNull for empty), or null if a slot is negative or an item is not valid JSON
+     */
+    @Nullable
+    static Map<Integer, JsonElement> parse(Map<Integer, String> changes) {
+        Map<Integer, JsonElement> parsed = new LinkedHashMap<>();
+        for (Map.Entry<Integer, String> change : changes.entrySet()) {
+            if (change.getKey() == null || change.getKey() < 0) return null;
+            try {
+                parsed.put(change.getKey(), change.getValue() != null ? JsonParser.parseString(change.getValue()) : JsonNull.INSTANCE);
+            } catch (RuntimeException e) {
+                return null;
+            }
+        }
+        return parsed;
+    }
+
+    /** Changes as the {@code {"<slot>": item}} document passed to {@code hysync_apply_stash_slots}. */
+    static String toJson(Map<Integer, JsonElement> changes) {
+        JsonObject json = new JsonObject();
+        for (Map.Entry<Integer, JsonElement> change : changes.entrySet()) {
+            json.add(String.valueOf(change.getKey()), change.getValue());
+        }
+        return json.toString();
+    }
+
+    static String apply(@Nullable String itemsJson, Map<Integer, JsonElement> changes) {
+        JsonElement items = itemsJson != null ? JsonParser.parseString(itemsJson) : JsonNull.INSTANCE;
+        if (!items.isJsonArray() && !items.isJsonObject()) {
+            items = new JsonArray();
+        }
+        for (Map.Entry<Integer, JsonElement> change : changes.entrySet()) {
+            int slot = change.getKey();
+            JsonElement item = change.getValue() != null ? change.getValue() : JsonNull.INSTANCE;
+            if (items.isJsonObject()) {
+                if (item.isJsonNull()) {
+                    items.getAsJsonObject().remove(String.valueOf(slot));
+                } else {
+                    items.getAsJsonObject().add(String.valueOf(slot), item);
+                }
+                continue;
+            }
+            JsonArray array = items.getAsJsonArray();
+            if (slot < array.size()) {
+                array.set(slot, item);
+            } else if (!item.isJsonNull()) {
+                while (array.size() < slot) {
+                    array.add(JsonNull.INSTANCE);
+                }
+                array.add(item);
+            }
+        }
+        return items.toString();
+    }
+
+    static String swap(@Nullable String itemsJson, int first, int second) {
+        Map<Integer, JsonElement> changes = new LinkedHashMap<>();
+        changes.put(first, slot(itemsJson, second));
+        changes.put(second, slot(itemsJson, first));
+        return apply(itemsJson, changes);
+    }
+
+    private static JsonElement slot(@Nullable String itemsJson, int slot) {
+        JsonElement items = itemsJson != null ? JsonParser.parseString(itemsJson) : JsonNull.INSTANCE;
+        JsonElement item = null;
+        if (items.isJsonArray()) {
+            item = slot < items.getAsJsonArray().size() ? items.getAsJsonArray().get(slot) : null;
+        } else if (items.isJsonObject()) {
+            item = items.getAsJsonObject().get(String.valueOf(slot));
+        }
+        return item != null ? item : JsonNull.INSTANCE;
+    }
+}
@@ -1,86 +1,349 @@
 package org.hysync.database.core;
 
+import com.google.gson.JsonElement;
+import com.hypixel.hytale.logger.HytaleLogger;
 import org.hysync.database.api.StashSyncService;
 import org.hysync.database.repository.StashDAO;
+import org.hysync.database.util.BoundedCache;
+import org.hysync.database.util.FrequencyCache;
+import org.hysync.database.util.SingleFlight;
 
+import javax.annotation.Nullable;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
 
+/**
+ * Stash sync with a per-server cache of {@link PlayerStashes} (stashes keyed by name). The cache is
+ * bounded by the total number of cached stashes and evicts by frequency and recency, plus entries
+ * idle for longer than the expiry, so a missed disconnect event cannot leak memory.
+ * <p>
+ * Cache misses are loaded once per key no matter how many callers ask at the same time, and
+ * "not found" results (no stash, no settings row) are remembered for a few seconds.
+ * <p>
+ * In write-behind mode {@code saveStash} only marks the stash dirty; dirty stashes are kept apart
+ * from the evicting cache and written in one batched upsert by {@link #flushStashes},
+ * {@link #unloadCache}, {@link #flushAll} (timer and shutdown). Reads return dirty versions first.
+ */
 public class StashSyncServiceImpl implements StashSyncService {
 
+    /** Default bound on cached stashes across all players. */
+    public static final int DEFAULT_CACHE_SIZE = 10_000;
+    /** Default idle time after which a player's cached stashes are dropped. */
+    public static final int DEFAULT_CACHE_EXPIRE_MINUTES = 30;
+    /** Default time a "not found" lookup is remembered. */
+    public static final int DEFAULT_NEGATIVE_CACHE_SECONDS = 10;
+
+    private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+    /** Consecutive failed flushes after which a dirty stash is dropped instead of retried. */
+    private static final int MAX_FLUSH_ATTEMPTS = 3;
+    /** Stashes written per upsert statement during flushAll. */
+    private static final int FLUSH_BATCH_SIZE = 500;
+    /** Locks serializing in-memory slot updates; players hash onto them. */
+    private static final int SLOT_LOCK_STRIPES = 64;
+
     private final DatabaseManager databaseManager;
     private final StashDAO stashDAO;
-    private final java.util.Map<String, List<StashModel>> cache = new java.util.concurrent.ConcurrentHashMap<>();
+    private final FrequencyCache<String, PlayerStashes> cache;
+    private final long negativeTtlNanos;
+    private final SingleFlight<String, Optional<StashModel>> stashLoads = new SingleFlight<>();
+    private final SingleFlight<String, List<StashModel>> stashListLoads = new SingleFlight<>();
+    private final SingleFlight<String, List<StashSummary>> summaryLoads = new SingleFlight<>();
+    private final SingleFlight<String, Optional<Integer>> maxStashesLoads = new SingleFlight<>();
+    private final boolean writeBehind;
+    private final boolean slotUpdates;
+    // Player -> stash name -> unwritten save. Only changed inside dirty.compute*, so an empty
+    // player map is never left behind; entries are removed once their exact save is stored.
+    private final Map<String, Map<String, DirtyStash>> dirty = new ConcurrentHashMap<>();
+    // Serializes flushes so an older save can never be written after a newer one.
+    private final ReentrantLock flushLock = new ReentrantLock();
+    // Read-modify-write slot updates of one player run one at a time, so none is lost.
+    private final Object[] slotLocks = new Object[SLOT_LOCK_STRIPES];
 
     public StashSyncServiceImpl(DatabaseManager databaseManager) {
+        this(databaseManager, DEFAULT_CACHE_SIZE, DEFAULT_CACHE_EXPIRE_MINUTES, DEFAULT_NEGATIVE_CACHE_SECONDS);
+    }
+
+    /**
+     * @param cacheSize            maximum number of stashes cached across all players
+     * @param cacheExpireMinutes   drop a player's cached stashes after this long without access; 0 = never
+     * @param negativeCacheSeconds remember "no such stash" / "no settings row" this long; 0 = never
+     */
+    public StashSyncServiceImpl(DatabaseManager databaseManager, int cacheSize, int cacheExpireMinutes,
+                                int negativeCacheSeconds) {
+        this(databaseManager, cacheSize, cacheExpireMinutes, negativeCacheSeconds, false);
+    }
+
+    /**
+     * @param writeBehind buffer {@code saveStash} until the next flush instead of writing it at once
+     */
+    public StashSyncServiceImpl(DatabaseManager databaseManager, int cacheSize, int cacheExpireMinutes,
+                                int negativeCacheSeconds, boolean writeBehind) {
         this.databaseManager = databaseManager;
-        this.stashDAO = new StashDAO();
+        this.writeBehind = writeBehind;
+        this.negativeTtlNanos = TimeUnit.SECONDS.toNanos(Math.max(0, negativeCacheSeconds));
+        this.stashDAO = new StashDAO(databaseManager.hasTrigger(StashDAO.REVISION_TRIGGER));
+        this.slotUpdates = databaseManager.hasFunction(StashDAO.SLOT_FUNCTION);
+        this.cache = new FrequencyCache<>(cacheSize, TimeUnit.MINUTES.toNanos(Math.max(0, cacheExpireMinutes)),
+                PlayerStashes::weight);
+        for (int i = 0; i < slotLocks.length; i++) {
+            slotLocks[i] = new Object();
+        }
     }
 
     @Override
     public Optional<StashModel> getStash(String playerUuid, String stashName) {
-        // Check cache first
-        List<StashModel> cached = cache.get(playerUuid);
+        DirtyStash pending = dirtyStash(playerUuid, stashName);
+        if (pending != null) {
+            return Optional.of(pending.stash());
+        }
+        PlayerStashes cached = cache.get(playerUuid);
         if (cached != null) {
-            for (StashModel s : cached) {
-                if (s.name().equals(stashName))
-                    return Optional.of(s);
-            }
+            Optional<StashModel> known = cached.lookup(stashName, System.nanoTime());
+            if (known != null)
+                return known;
         }
 
-        try (Connection conn = databaseManager.getConnection()) {
-            Optional<StashModel> result = stashDAO.getStash(conn, playerUuid, stashName);
-            // Update cache if found (and cache exists for player) or just rely on DB
-            // Typically we only populate cache on full load or specific request if we want
-            // partial cache
-            // For "load on join" behavior, we might assume cache is populated if present
-            return result;
+        try {
+            return stashLoads.load(playerUuid + '\0' + stashName, () -> loadStash(playerUuid, stashName));
         } catch (SQLException e) {
             return Optional.empty();
         }
     }
 
+    private Optional<StashModel> loadStash(String playerUuid, String stashName) throws SQLException {
+        long stamp = cache.stamp(playerUuid);
+        PlayerStashes cached = cache.peek(playerUuid);
+        long writes = cached != null ? cached.writes() : 0;
+        Optional<StashModel> result;
+        try (Connection conn = databaseManager.getConnection()) {
+            result = stashDAO.getStash(conn, playerUuid, stashName);
+        }
+        if (result.isEmpty() && negativeTtlNanos == 0) return result;
+        long missingUntil = System.nanoTime() + negativeTtlNanos;
+        if (cached == null) {
+            PlayerStashes loaded = new PlayerStashes();
+            loaded.loadedIfUnchanged(stashName, result, missingUntil, 0);
+            cache.putIfAbsent(playerUuid, loaded, stamp);
+        } else if (cached.loadedIfUnchanged(stashName, result, missingUntil, writes)) {
+            cache.putIfUnchanged(playerUuid, cached, stamp);
+        }
+        return result;
+    }
+
     @Override
     public List<StashModel> getStashes(String playerUuid) {
-        if (cache.containsKey(playerUuid)) {
-            return new java.util.ArrayList<>(cache.get(playerUuid));
+        PlayerStashes cached = cache.get(playerUuid);
+        List<StashModel> list = cached != null ? cached.listIfComplete() : null;
+        if (list == null) {
+            try {
+                list = new ArrayList<>(stashListLoads.load(playerUuid, () -> loadStashes(playerUuid)));
+            } catch (SQLException e) {
+                return Collections.emptyList();
+            }
+        }
+        Map<String, DirtyStash> pending = dirty.get(playerUuid);
+        if (pending == null) return list;
+        Map<String, StashModel> byName = new LinkedHashMap<>();
+        for (StashModel stash : list) {
+            byName.put(stash.name(), stash);
+        }
+        for (DirtyStash save : pending.values()) {
+            byName.put(save.stash().name(), save.stash());
         }
+        return new ArrayList<>(byName.values());
+    }
 
+    private List<StashModel> loadStashes(String playerUuid) throws SQLException {
+        long stamp = cache.stamp(playerUuid);
+        PlayerStashes cached = cache.peek(playerUuid);
+        long writes = cached != null ? cached.writes() : 0;
+        List<StashModel> list;
         try (Connection conn = databaseManager.getConnection()) {
-            List<StashModel> list = stashDAO.getStashes(conn, playerUuid);
-            cache.put(playerUuid, new java.util.concurrent.CopyOnWriteArrayList<>(list));
-            return list;
-        } catch (SQLException e) {
-            return Collections.emptyList();
+            list = stashDAO.getStashes(conn, playerUuid);
+        }
+        // Never overwrite a write that raced with this load; the next call loads again.
+        if (cached == null) {
+            cache.putIfAbsent(playerUuid, PlayerStashes.loaded(list, null), stamp);
+        } else if (cached.completeIfUnchanged(list, writes)) {
+            cache.putIfUnchanged(playerUuid, cached, stamp);
+        }
+        return List.copyOf(list);
+    }
+
+    @Override
+    public List<StashSummary> getStashSummaries(String playerUuid) {
+        PlayerStashes cached = cache.get(playerUuid);
+        List<StashSummary> list = cached != null ? cached.summariesIfComplete() : null;
+        if (list == null) {
+            try {
+                list = new ArrayList<>(summaryLoads.load(playerUuid, () -> loadSummaries(playerUuid)));
+            } catch (SQLException e) {
+                return Collections.emptyList();
+            }
+        }
+        Map<String, DirtyStash> pending = dirty.get(playerUuid);
+        if (pending == null) return list;
+        Map<String, StashSummary> byName = new LinkedHashMap<>();
+        for (StashSummary summary : list) {
+            byName.put(summary.name(), summary);
         }
+        for (DirtyStash save : pending.values()) {
+            byName.put(save.stash().name(), PlayerStashes.summaryOf(save.stash(), save.changedAt()));
+        }
+        return new ArrayList<>(byName.values());
+    }
+
+    private List<StashSummary> loadSummaries(String playerUuid) throws SQLException {
+        long stamp = cache.stamp(playerUuid);
+        PlayerStashes cached = cache.peek(playerUuid);
+        long writes = cached != null ? cached.writes() : 0;
+        List<StashSummary> list;
+        try (Connection conn = databaseManager.getConnection()) {
+            list = stashDAO.getStashSummaries(conn, playerUuid);
+        }
+        if (cached == null) {
+            cache.putIfAbsent(playerUuid, PlayerStashes.summarized(list, null), stamp);
+        } else if (cached.summariesCompleteIfUnchanged(list, writes)) {
+            cache.putIfUnchanged(playerUuid, cached, stamp);
+        }
+        return List.copyOf(list);
     }
 
     @Override
     public boolean saveStash(String playerUuid, String name, int size, String itemsJson) {
+        if (writeBehind) {
+            // Keep the last known stored revision; the flush replaces it with the new one.
+            StashModel stash = new StashModel(playerUuid, name, size, itemsJson, knownRevision(playerUuid, name));
+            markDirty(stash);
+            cacheStash(stash);
+            return true;
+        }
         try (Connection conn = databaseManager.getConnection()) {
-            stashDAO.saveStash(conn, playerUuid, name, size, itemsJson);
+            long revision = stashDAO.saveStash(conn, playerUuid, name, size, itemsJson);
+            cacheStash(new StashModel(playerUuid, name, size, itemsJson, revision));
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public OptionalLong saveStash(String playerUuid, String name, int size, String itemsJson, long expectedRevision) {
+        if (!stashDAO.hasRevisions()) return OptionalLong.empty();
+        // Conditional writes are never buffered, and a dirty save flushed later would overwrite them.
+        DirtyStash pending = dirtyStash(playerUuid, name);
+        if (!flushStashes(playerUuid)) return OptionalLong.empty();
+        if (pending != null && expectedRevision != 0 && pending.stash().revision() == expectedRevision) {
+            // The caller read the buffered version (which carries the revision it replaces) and
+            // the flush just stored it; compare against what it was stored at.
+            expectedRevision = knownRevision(playerUuid, name);
+        }
+        try (Connection conn = databaseManager.getConnection()) {
+            OptionalLong revision = stashDAO.saveStashIfRevision(conn, playerUuid, name, size, itemsJson, expectedRevision);
+            if (revision.isPresent()) {
+                cacheStash(new StashModel(playerUuid, name, size, itemsJson, revision.getAsLong()));
+            } else {
+                // Conflict: someone else wrote it, so a cached copy is stale. Reload it so the
+                // caller's next getStash sees the current revision.
+                PlayerStashes cached = cache.peek(playerUuid);
+                if (cached != null) {
+                    Optional<StashModel> current = stashDAO.getStash(conn, playerUuid, name);
+                    cached.remove(name);
+                    current.ifPresent(cached::put);
+                    cache.reweigh(playerUuid, cached);
+                }
+            }
+            return revision;
+        } catch (SQLException e) {
+            return OptionalLong.empty();
+        }
+    }
 
-            // Update cache
-            List<StashModel> list = cache.computeIfAbsent(playerUuid,
-                    k -> new java.util.concurrent.CopyOnWriteArrayList<>());
-            list.removeIf(s -> s.name().equals(name));
-            list.add(new StashModel(playerUuid, name, size, itemsJson));
+    @Override
+    public boolean setSlot(String playerUuid, String stashName, int slot, String itemJson) {
+        if (itemJson == null) return false;
+        return applySlotDelta(playerUuid, stashName, Collections.singletonMap(slot, itemJson));
+    }
+
+    @Override
+    public boolean clearSlot(String playerUuid, String stashName, int slot) {
+        return applySlotDelta(playerUuid, stashName, Collections.singletonMap(slot, null));
+    }
 
+    @Override
+    public boolean swapSlots(String playerUuid, String stashName, int first, int second) {
+        if (first < 0 || second < 0) return false;
+        return updateSlots(playerUuid, stashName, Math.max(first, second), items -> StashSlots.swap(items, first, second),
+            conn -> stashDAO.swapSlots(conn, playerUuid, stashName, first, second));
+    }
+
+    @Override
+    public boolean applySlotDelta(String playerUuid, String stashName, Map<Integer, String> changes) {
+        if (changes == null) return false;
+        if (changes.isEmpty()) return true;
+        Map<Integer, JsonElement> parsed = StashSlots.parse(changes);
+        if (parsed == null) return false;
+        int maxSlot = Collections.max(parsed.keySet());
+        return updateSlots(playerUuid, stashName, maxSlot, items -> StashSlots.apply(items, parsed),
+            conn -> stashDAO.applySlots(conn, playerUuid, stashName, StashSlots.toJson(parsed), maxSlot));
+    }
+
+    /**
+     * Run a slot update in the database and mirror it in the cache. Buffered saves (write-behind)
+     * and databases without V10 apply it to the current stash in memory and save the result, one
+     * update per player at a time so concurrent changes to other slots are not overwritten.
+     */
+    private boolean updateSlots(String playerUuid, String stashName, int maxSlot, UnaryOperator<String> change,
+                                SlotUpdate update) {
+        if (writeBehind || !slotUpdates) {
+            synchronized (slotLocks[Math.floorMod(playerUuid.hashCode(), slotLocks.length)]) {
+                Optional<StashModel> current = getStash(playerUuid, stashName);
+                if (current.isEmpty() || maxSlot >= current.get().size()) return false;
+                StashModel stash = current.get();
+                return saveStash(playerUuid, stashName, stash.size(), change.apply(stash.itemsJson()));
+            }
+        }
+        try (Connection conn = databaseManager.getConnection()) {
+            OptionalLong revision = update.execute(conn);
+            if (revision.isEmpty()) return false;
+            PlayerStashes cached = cache.peek(playerUuid);
+            if (cached != null) {
+                cached.slotsChanged(stashName, change, revision.getAsLong(), stashDAO.hasRevisions());
+                cache.reweigh(playerUuid, cached);
+            }
             return true;
         } catch (SQLException e) {
             return false;
         }
     }
 
+    @FunctionalInterface
+    private interface SlotUpdate {
+        OptionalLong execute(Connection conn) throws SQLException;
+    }
+
     @Override
     public boolean deleteStash(String playerUuid, String stashName) {
+        // A dirty save flushed after the delete would bring the stash back.
+        if (!flushStashes(playerUuid)) return false;
         try (Connection conn = databaseManager.getConnection()) {
             if (stashDAO.deleteStash(conn, playerUuid, stashName)) {
-                if (cache.containsKey(playerUuid)) {
-                    cache.get(playerUuid).removeIf(s -> s.name().equals(stashName));
+                PlayerStashes cached = cache.peek(playerUuid);
+                if (cached != null) {
+                    cached.remove(stashName);
+                    cache.reweigh(playerUuid, cached);
                 }
                 return true;
             }
@@ -92,17 +355,14 @@ public class StashSyncServiceImpl implements StashSyncService {
 
     @Override
     public boolean renameStash(String playerUuid, String oldName, String newName) {
+        if (!flushStashes(playerUuid)) return false;
         try (Connection conn = databaseManager.getConnection()) {
-            if (stashDAO.renameStash(conn, playerUuid, oldName, newName)) {
-                if (cache.containsKey(playerUuid)) {
-                    List<StashModel> list = cache.get(playerUuid);
-                    for (int i = 0; i < list.size(); i++) {
-                        if (list.get(i).name().equals(oldName)) {
-                            StashModel old = list.get(i);
-                            list.set(i, new StashModel(playerUuid, newName, old.size(), old.itemsJson()));
-                            break;
-                        }
-                    }
+            OptionalLong revision = stashDAO.renameStash(conn, playerUuid, oldName, newName);
+            if (revision.isPresent()) {
+                PlayerStashes cached = cache.peek(playerUuid);
+                if (cached != null) {
+                    cached.rename(oldName, newName, revision.getAsLong());
+                    cache.reweigh(playerUuid, cached);
                 }
                 return true;
             }
@@ -114,25 +374,262 @@ public class StashSyncServiceImpl implements StashSyncService {
 
     @Override
     public void unloadCache(String playerUuid) {
-        cache.remove(playerUuid);
+        // The next server must see the final contents. A failed flush stays dirty for the timer.
+        flushStashes(playerUuid);
+        cache.invalidate(playerUuid);
     }
 
     @Override
-    public int getMaxStashes(String playerUuid) {
+    public boolean revalidateCache(String playerUuid) {
+        PlayerStashes cached = cache.peek(playerUuid);
+        if (cached == null) return true;
+        long stamp = cache.stamp(playerUuid);
+        long writes = cached.writes();
         try (Connection conn = databaseManager.getConnection()) {
-            return stashDAO.getMaxStashes(conn, playerUuid);
+            Map<String, Long> revisions = stashDAO.getStashRevisions(conn, playerUuid);
+            List<String> stale = cached.stalePayloads(revisions, stashDAO.hasRevisions());
+            List<StashModel> reloaded = stale.isEmpty() ? List.of() : stashDAO.getStashes(conn, playerUuid, stale);
+            if (cached.revalidatedIfUnchanged(revisions, reloaded, writes, stashDAO.hasRevisions())) {
+                cache.putIfUnchanged(playerUuid, cached, stamp);
+            } else {
+                // Written meanwhile, so the listing may predate it; let the next read load instead.
+                cache.invalidate(playerUuid);
+            }
+            return true;
+        } catch (SQLException e) {
+            cache.invalidate(playerUuid);
+            return false;
+        }
+    }
+
+    @Override
+    public boolean flushStashes(String playerUuid) {
+        if (!dirty.containsKey(playerUuid)) return true;
+        flushLock.lock();
+        try {
+            return flushBatch(dirtyStashes(List.of(playerUuid))) == 0;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Write every dirty stash, in batches of upserts. Called by the plugin scheduler and on shutdown.
+     *
+     * @return number of stashes that failed to flush
+     */
+    public int flushAll() {
+        flushLock.lock();
+        try {
+            List<DirtyStash> saves = dirtyStashes(new ArrayList<>(dirty.keySet()));
+            int failed = 0;
+            for (int from = 0; from < saves.size(); from += FLUSH_BATCH_SIZE) {
+                failed += flushBatch(saves.subList(from, Math.min(saves.size(), from + FLUSH_BATCH_SIZE)));
+            }
+            if (failed > 0) {
+                LOGGER.atWarning().log("[WriteBehind] %d stash(es) failed to flush", failed);
+            }
+            return failed;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /** Number of stashes waiting for a flush. */
+    public int getDirtyCount() {
+        int count = 0;
+        for (Map<String, DirtyStash> pending : dirty.values()) {
+            count += pending.size();
+        }
+        return count;
+    }
+
+    /**
+     * Fill the cache with data loaded elsewhere (join prefetch), as if getStashSummaries/getMaxStashes
+     * had just been called.
+     */
+    public void primeCache(String playerUuid, List<StashSummary> summaries, int maxStashes) {
+        PlayerStashes cached = cache.peek(playerUuid);
+        if (cached == null) {
+            cache.put(playerUuid, PlayerStashes.summarized(summaries, maxStashes));
+            return;
+        }
+        // A player back from another server: keep the payloads the summaries prove unchanged.
+        cached.primed(summaries, maxStashes, stashDAO.hasRevisions());
+        cache.put(playerUuid, cached);
+    }
+
+    /** SQL expression for player_stashes.revision (a constant 0 before V8), for queries built elsewhere. */
+    String revisionColumn() {
+        return stashDAO.revisionColumn();
+    }
+
+    public BoundedCache.Stats cacheStats() {
+        return cache.stats();
+    }
+
+    @Override
+    public int getMaxStashes(String playerUuid) {
+        PlayerStashes cached = cache.get(playerUuid);
+        if (cached != null) {
+            Integer max = cached.maxStashes();
+            if (max != null) {
+                return max;
+            }
+            if (cached.isMaxStashesMissing(System.nanoTime())) {
+                return 0;
+            }
+        }
+        try {
+            return maxStashesLoads.load(playerUuid, () -> loadMaxStashes(playerUuid)).orElse(0);
         } catch (SQLException e) {
             return 0;
         }
     }
 
+    private Optional<Integer> loadMaxStashes(String playerUuid) throws SQLException {
+        long stamp = cache.stamp(playerUuid);
+        PlayerStashes cached = cache.peek(playerUuid);
+        long writes = cached != null ? cached.writes() : 0;
+        Optional<Integer> result;
+        try (Connection conn = databaseManager.getConnection()) {
+            result = stashDAO.findMaxStashes(conn, playerUuid);
+        }
+        if (result.isEmpty() && negativeTtlNanos == 0) return result;
+        long missingUntil = System.nanoTime() + negativeTtlNanos;
+        if (cached == null) {
+            PlayerStashes loaded = new PlayerStashes();
+            loaded.loadedMaxStashesIfUnchanged(result.orElse(null), missingUntil, 0);
+            cache.putIfAbsent(playerUuid, loaded, stamp);
+        } else if (cache.stamp(playerUuid) == stamp) {
+            cached.loadedMaxStashesIfUnchanged(result.orElse(null), missingUntil, writes);
+            cache.reweigh(playerUuid, cached);
+        }
+        return result;
+    }
+
     @Override
     public boolean setMaxStashes(String playerUuid, int maxStashes) {
         try (Connection conn = databaseManager.getConnection()) {
             stashDAO.setMaxStashes(conn, playerUuid, maxStashes);
+            PlayerStashes cached = cache.peek(playerUuid);
+            if (cached != null) {
+                cached.setMaxStashes(maxStashes);
+                cache.reweigh(playerUuid, cached);
+            }
             return true;
         } catch (SQLException e) {
             return false;
         }
     }
+
+    @Nullable
+    private DirtyStash dirtyStash(String playerUuid, String stashName) {
+        Map<String, DirtyStash> pending = dirty.get(playerUuid);
+        return pending != null ? pending.get(stashName) : null;
+    }
+
+    private long knownRevision(String playerUuid, String stashName) {
+        DirtyStash pending = dirtyStash(playerUuid, stashName);
+        if (pending != null) return pending.stash().revision();
+        PlayerStashes cached = cache.peek(playerUuid);
+        StashModel stash = cached != null ? cached.get(stashName) : null;
+        return stash != null ? stash.revision() : 0;
+    }
+
+    private void markDirty(StashModel stash) {
+        dirty.compute(stash.ownerUuid(), (k, pending) -> {
+            if (pending == null) {
+                pending = new ConcurrentHashMap<>();
+            }
+            pending.put(stash.name(), new DirtyStash(stash, Instant.now(), 0));
+            return pending;
+        });
+    }
+
+    private List<DirtyStash> dirtyStashes(List<String> players) {
+        List<DirtyStash> saves = new ArrayList<>();
+        for (String playerUuid : players) {
+            Map<String, DirtyStash> pending = dirty.get(playerUuid);
+            if (pending != null) {
+                saves.addAll(pending.values());
+            }
+        }
+        return saves;
+    }
+
+    /** Write one batch; saves stay dirty until stored and are only cleared if nothing newer replaced them. */
+    private int flushBatch(List<DirtyStash> saves) {
+        if (saves.isEmpty()) return 0;
+        List<StashModel> stashes = new ArrayList<>(saves.size());
+        for (DirtyStash save : saves) {
+            stashes.add(save.stash());
+        }
+        try (Connection conn = databaseManager.getConnection()) {
+            long[] revisions = stashDAO.saveStashes(conn, stashes);
+            for (int i = 0; i < saves.size(); i++) {
+                flushed(saves.get(i), revisions[i]);
+            }
+            return 0;
+        } catch (SQLException e) {
+            if (saves.size() == 1) {
+                failed(saves.get(0), e);
+                return 1;
+            }
+        }
+        // The statement failed as a whole; retry one by one so a single bad row
+        // does not hold back everyone else in the batch.
+        int failed = 0;
+        for (DirtyStash save : saves) {
+            failed += flushBatch(List.of(save));
+        }
+        return failed;
+    }
+
+    private void flushed(DirtyStash save, long revision) {
+        StashModel stash = save.stash();
+        dirty.computeIfPresent(stash.ownerUuid(), (k, pending) -> {
+            pending.remove(stash.name(), save);
+            return pending.isEmpty() ? null : pending;
+        });
+        PlayerStashes cached = cache.peek(stash.ownerUuid());
+        if (cached != null) {
+            cached.revised(stash, revision);
+        }
+    }
+
+    private void failed(DirtyStash save, SQLException cause) {
+        StashModel stash = save.stash();
+        boolean drop = save.failures() + 1 >= MAX_FLUSH_ATTEMPTS;
+        if (drop) {
+            LOGGER.atSevere().withCause(cause).log("[WriteBehind] Dropping stash %s of %s after %d failed flushes",
+                stash.name(), stash.ownerUuid(), MAX_FLUSH_ATTEMPTS);
+        }
+        dirty.computeIfPresent(stash.ownerUuid(), (k, pending) -> {
+            if (drop) {
+                pending.remove(stash.name(), save);
+            } else {
+                pending.replace(stash.name(), save, save.failedOnce());
+            }
+            return pending.isEmpty() ? null : pending;
+        });
+    }
+
+    /** A buffered save; {@code changedAt} stands in for updated_at until it is written. */
+    private record DirtyStash(StashModel stash, Instant changedAt, int failures) {
+
+        DirtyStash failedOnce() {
+            return new DirtyStash(stash, changedAt, failures + 1);
+        }
+    }
+
+    /** Put a just-written stash into the player's entry, creating a partial entry if needed. */
+    private void cacheStash(StashModel stash) {
+        PlayerStashes cached = cache.peek(stash.ownerUuid());
+        if (cached == null) {
+            cached = new PlayerStashes();
+        }
+        cached.put(stash);
+        cache.put(stash.ownerUuid(), cached);
+    }
 }
@@ -0,0 +1,196 @@
+package org.hysync.database.core;
+
+import com.hypixel.hytale.logger.HytaleLogger;
+import org.hysync.database.api.VoteSyncService.VoteResult;
+import org.hysync.database.repository.VoteDAO;
+
+import javax.annotation.Nullable;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queue in front of vote inserts for bursts (vote parties, site resets). Callers get a future at
+ * once; one worker thread collects votes for up to {@code maxDelayMillis} (or {@code batchSize}
+ * votes) and writes each micro-batch with a single insert on a single pooled connection, so a
+ * burst never takes more than one connection from inventory saves.
+ * <p>
+ * Each future completes with the totals around that vote: the batch returns every player's new
+ * total and the votes are replayed in arrival order to split it, so milestone checks stay exact.
+ */
+public class VoteIngestor {
+
+    private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+    /** Votes waiting beyond this are rejected instead of queued. */
+    private static final int MAX_QUEUED = 100_000;
+    /** How often an idle worker checks whether it was closed. */
+    private static final long IDLE_POLL_MS = 200;
+
+    private final DatabaseManager databaseManager;
+    private final VoteDAO voteDAO;
+    @Nullable
+    private final VoteLeaderboard leaderboard;
+    private final int batchSize;
+    private final long maxDelayNanos;
+    private final BlockingQueue<QueuedVote> queue = new LinkedBlockingQueue<>(MAX_QUEUED);
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    /**
+     * @param batchSize      most votes written per statement
+     * @param maxDelayMillis longest a vote waits for others to join its batch
+     */
+    public VoteIngestor(DatabaseManager databaseManager, VoteDAO voteDAO, @Nullable VoteLeaderboard leaderboard,
+                        int batchSize, int maxDelayMillis) {
+        this.databaseManager = databaseManager;
+        this.voteDAO = voteDAO;
+        this.leaderboard = leaderboard;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxDelayMillis));
+        this.worker = new Thread(this::run, "HysyncDB-votes");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /** Queue a vote without blocking. The future fails if the queue is full or closed, or on database error. */
+    public CompletableFuture<VoteResult> submit(String playerUuid, String platform, int count) {
+        QueuedVote vote = new QueuedVote(new VoteDAO.Vote(playerUuid, platform, count), new CompletableFuture<>());
+        synchronized (this) {
+            if (!running || !queue.offer(vote)) {
+                return CompletableFuture.failedFuture(new RejectedExecutionException("Vote queue is full or closed"));
+            }
+        }
+        return vote.future();
+    }
+
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    /** Stop accepting votes and write everything still queued. Call before the pool shuts down. */
+    public void close() {
+        synchronized (this) {
+            running = false;
+        }
+        // Not interrupted: that would fail the pool checkout of a batch being written.
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Whatever the worker did not get to (or everything, if it is stuck).
+        List<QueuedVote> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        for (int from = 0; from < rest.size(); from += batchSize) {
+            write(rest.subList(from, Math.min(rest.size(), from + batchSize)));
+        }
+    }
+
+    private void run() {
+        List<QueuedVote> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                QueuedVote first = queue.poll(IDLE_POLL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < batchSize) {
+                    QueuedVote next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            }
+            if (!batch.isEmpty()) {
+                write(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<QueuedVote> batch) {
+        try (Connection conn = databaseManager.getConnection()) {
+            if (!voteDAO.hasTotals()) {
+                // Before V12 there is nothing to aggregate; still one connection for the batch.
+                for (QueuedVote vote : batch) {
+                    writeOne(conn, vote);
+                }
+                return;
+            }
+            Map<String, Integer> totals;
+            try {
+                totals = voteDAO.addVotes(conn, votesOf(batch));
+            } catch (SQLException e) {
+                if (batch.size() == 1) throw e;
+                // Nothing was written; retry one by one so a bad vote does not fail the others.
+                for (QueuedVote vote : batch) {
+                    writeOne(conn, vote);
+                }
+                return;
+            }
+            complete(batch, totals);
+        } catch (SQLException | RuntimeException e) {
+            LOGGER.atSevere().withCause(e).log("[Votes] Failed to write %d queued vote(s)", batch.size());
+            for (QueuedVote vote : batch) {
+                vote.future().completeExceptionally(e);
+            }
+        }
+    }
+
+    private void writeOne(Connection conn, QueuedVote queued) {
+        VoteDAO.Vote vote = queued.vote();
+        try {
+            int total = voteDAO.addVoteReturningTotal(conn, vote.playerUuid(), vote.platform(), vote.count());
+            updateLeaderboard(vote.playerUuid(), total);
+            queued.future().complete(new VoteResult(total - vote.count(), total));
+        } catch (SQLException | RuntimeException e) {
+            LOGGER.atSevere().withCause(e).log("Failed to add vote for %s on %s", vote.playerUuid(), vote.platform());
+            queued.future().completeExceptionally(e);
+        }
+    }
+
+    /** Split each player's new total back over their votes, in arrival order. */
+    private void complete(List<QueuedVote> batch, Map<String, Integer> totals) {
+        Map<String, Integer> totalSoFar = new HashMap<>();
+        for (QueuedVote queued : batch) {
+            totalSoFar.merge(queued.vote().playerUuid(), queued.vote().count(), Integer::sum);
+        }
+        // Each player's batch sum becomes the total before the batch.
+        totalSoFar.replaceAll((playerUuid, sum) -> totals.getOrDefault(playerUuid, sum) - sum);
+        for (QueuedVote queued : batch) {
+            VoteDAO.Vote vote = queued.vote();
+            int previous = totalSoFar.get(vote.playerUuid());
+            totalSoFar.put(vote.playerUuid(), previous + vote.count());
+            queued.future().complete(new VoteResult(previous, previous + vote.count()));
+        }
+        for (Map.Entry<String, Integer> total : totals.entrySet()) {
+            updateLeaderboard(total.getKey(), total.getValue());
+        }
+    }
+
+    private void updateLeaderboard(String playerUuid, int total) {
+        if (leaderboard != null) {
+            leaderboard.update(playerUuid, total, null);
+        }
+    }
+
+    private static List<VoteDAO.Vote> votesOf(List<QueuedVote> batch) {
+        List<VoteDAO.Vote> votes = new ArrayList<>(batch.size());
+        for (QueuedVote queued : batch) {
+            votes.add(queued.vote());
+        }
+        return votes;
+    }
+
+    private record QueuedVote(VoteDAO.Vote vote, CompletableFuture<VoteResult> future) {
+    }
+}
@@ -0,0 +1,260 @@
+package org.hysync.database.core;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.hypixel.hytale.logger.HytaleLogger;
+import org.hysync.database.api.VoteSyncService.TopVoter;
+import org.hysync.database.util.BoundedCache;
+
+import javax.annotation.Nullable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * In-memory top voters (overall totals), loaded from player_vote_totals with one query whenever
+ * LISTEN on {@value #CHANNEL} becomes active and kept current incrementally: by {@link #update} after
+ * a local vote and by the V13 notification of every vote on any server. Display names come from a
+ * local cache filled by the load and the notifications, so a render costs no query.
+ * <p>
+ * Totals only grow, so a player outside the top {@code capacity} can only enter it with a total
+ * the notification carries. Only trust it while {@link #isAvailable()}.
+ * <p>
+ * It also counts the players per overall total ({@link VoteRanks}) for {@link #rank}. Those counts
+ * are loaded with the top and moved by the V15 notification, which carries the previous total.
+ * <p>
+ * Overall totals of recent voters and prefetched players are cached as well ({@link #total}):
+ * every notification records the new total, so a cached one is current while the listener is.
+ */
+public class VoteLeaderboard {
+
+    /** NOTIFY channel carrying every new overall total (see V13). */
+    public static final String CHANNEL = "hysync_votes";
+    /** Trigger that must exist for the leaderboard to stay current. */
+    public static final String TRIGGER = "trg_player_vote_totals_notify";
+
+    // Same order as the in-memory set: highest total first, ties by UUID.
+    private static final String LOAD_TOP =
+        "SELECT t.player_uuid, t.votes, p.display_name FROM player_vote_totals t " +
+        "LEFT JOIN players p ON p.uuid = t.player_uuid " +
+        "WHERE t.platform = '' ORDER BY t.votes DESC, t.player_uuid LIMIT ?";
+
+    // Players per total, plus the snapshot it was read in (to skip notifications it already contains).
+    private static final String LOAD_COUNTS =
+        "SELECT txid_current_snapshot()::text, h.votes, h.players FROM (SELECT 1) one " +
+        "LEFT JOIN (SELECT votes, COUNT(*) AS players FROM player_vote_totals " +
+        "WHERE platform = '' GROUP BY votes) h ON true";
+
+    private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+
+    private static final Comparator<Entry> ORDER =
+        Comparator.comparingInt(Entry::votes).reversed().thenComparing(Entry::playerUuid);
+
+    private final DatabaseManager databaseManager;
+    private final NotificationListener listener;
+    private final int capacity;
+    private final TreeSet<Entry> top = new TreeSet<>(ORDER);
+    private final Map<String, Entry> byPlayer = new HashMap<>();
+    private final BoundedCache<String, String> names;
+    private final BoundedCache<String, Integer> totals;
+    private VoteRanks ranks = new VoteRanks();
+    /** Whether ranks matches the database: false without the V15 payload or with totals above VoteRanks.MAX_TOTAL. */
+    private boolean ranksValid;
+    @Nullable
+    private LoadSnapshot loadedAt;
+
+    /**
+     * @param capacity number of top voters kept; larger requests are answered from the database
+     */
+    public VoteLeaderboard(DatabaseManager databaseManager, NotificationListener listener, int capacity) {
+        this.databaseManager = databaseManager;
+        this.listener = listener;
+        this.capacity = Math.max(1, capacity);
+        this.names = new BoundedCache<>(Math.max(1_000, this.capacity * 4));
+        this.totals = new BoundedCache<>(Math.max(1_000, this.capacity * 4));
+        listener.subscribe(CHANNEL, this::onNotification, this::reload);
+    }
+
+    /** True while the leaderboard is loaded and receiving changes. */
+    public boolean isAvailable() {
+        return listener.isListening(CHANNEL);
+    }
+
+    /**
+     * @return the first {@code limit} voters, or null if more than the kept top were asked for
+     */
+    @Nullable
+    public synchronized List<TopVoter> top(int limit) {
+        // A set below capacity holds every player with votes, so any limit is answerable.
+        if (limit > capacity && top.size() >= capacity) return null;
+        List<TopVoter> list = new ArrayList<>(Math.min(limit, top.size()));
+        for (Entry entry : top) {
+            if (list.size() >= limit) break;
+            String name = names.get(entry.playerUuid());
+            list.add(new TopVoter(name != null ? name : entry.playerUuid(), entry.votes()));
+        }
+        return list;
+    }
+
+    /**
+     * Rank among all voters of a player with an overall total of {@code votes}: 1 plus the number
+     * of players with more votes (ties share a rank). O(log votes), no query.
+     *
+     * @return the rank, or -1 if the counts are not being kept (then query the totals)
+     */
+    public synchronized int rank(int votes) {
+        return ranksValid ? 1 + ranks.countAbove(votes) : -1;
+    }
+
+    /** @return the player's cached overall total, or null if unknown or the listener is down */
+    @Nullable
+    public Integer total(String playerUuid) {
+        return isAvailable() ? totals.get(playerUuid) : null;
+    }
+
+    /** Take before reading a total elsewhere (e.g. prefetch); pass to {@link #primeTotal}. */
+    public long totalStamp(String playerUuid) {
+        return totals.stamp(playerUuid);
+    }
+
+    /** Cache a total read elsewhere, unless a newer one was recorded since {@code loadStamp}. */
+    public void primeTotal(String playerUuid, int votes, long loadStamp) {
+        if (isAvailable()) {
+            totals.putIfUnchanged(playerUuid, votes, loadStamp);
+        }
+    }
+
+    /**
+     * Record a player's new overall total (ahead of its notification for local votes). Lower or
+     * equal totals than the known one are ignored, since notifications may arrive late.
+     */
+    public synchronized void update(String playerUuid, int votes, @Nullable String displayName) {
+        if (displayName != null) {
+            names.put(playerUuid, displayName);
+        }
+        Integer known = totals.get(playerUuid);
+        // Invalidated first so a prefetch that read the old total cannot store it afterwards.
+        totals.invalidate(playerUuid);
+        totals.put(playerUuid, known != null ? Math.max(known, votes) : votes);
+        Entry current = byPlayer.get(playerUuid);
+        if (current != null) {
+            if (votes <= current.votes()) return;
+            top.remove(current);
+        }
+        Entry entry = new Entry(playerUuid, votes);
+        if (current == null && top.size() >= capacity && ORDER.compare(entry, top.last()) > 0) return;
+        top.add(entry);
+        byPlayer.put(playerUuid, entry);
+        if (top.size() > capacity) {
+            byPlayer.remove(top.pollLast().playerUuid());
+        }
+    }
+
+    private void onNotification(String payload) {
+        JsonObject change = JsonParser.parseString(payload).getAsJsonObject();
+        JsonElement name = change.get("name");
+        int votes = change.get("votes").getAsInt();
+        update(change.get("uuid").getAsString(), votes,
+            name != null && !name.isJsonNull() ? name.getAsString() : null);
+        countChange(change, votes);
+    }
+
+    /** Move the player from their previous total's count to the new one. Local votes wait for this too. */
+    private synchronized void countChange(JsonObject change, int votes) {
+        if (!ranksValid) return;
+        JsonElement xid = change.get("xid");
+        if (xid == null || !change.has("previous")) {
+            ranksValid = false;
+            LOGGER.atWarning().log("[Votes] Rank cache disabled: run migration V15 (ranks are counted in the database)");
+            return;
+        }
+        if (loadedAt != null && loadedAt.contains(xid.getAsLong())) return;
+        JsonElement previous = change.get("previous");
+        if (previous != null && !previous.isJsonNull()) {
+            ranks.add(previous.getAsInt(), -1);
+        }
+        ranksValid = ranks.add(votes, 1);
+    }
+
+    /** Runs on the listener thread right after LISTEN, so no change can slip in between. */
+    private void reload() {
+        List<Entry> loaded = new ArrayList<>();
+        Map<String, String> loadedNames = new HashMap<>();
+        VoteRanks loadedRanks = new VoteRanks();
+        boolean loadedRanksValid = true;
+        LoadSnapshot snapshot = null;
+        try (Connection conn = databaseManager.getConnection()) {
+            try (PreparedStatement ps = conn.prepareStatement(LOAD_TOP)) {
+                ps.setInt(1, capacity);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        loaded.add(new Entry(rs.getString(1), rs.getInt(2)));
+                        if (rs.getString(3) != null) {
+                            loadedNames.put(rs.getString(1), rs.getString(3));
+                        }
+                    }
+                }
+            }
+            try (PreparedStatement ps = conn.prepareStatement(LOAD_COUNTS);
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    snapshot = LoadSnapshot.parse(rs.getString(1));
+                    if (rs.getObject(2) != null) {
+                        loadedRanksValid &= loadedRanks.add(rs.getInt(2), rs.getInt(3));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to load player_vote_totals", e);
+        }
+        synchronized (this) {
+            top.clear();
+            byPlayer.clear();
+            for (Entry entry : loaded) {
+                top.add(entry);
+                byPlayer.put(entry.playerUuid(), entry);
+            }
+            for (Map.Entry<String, String> name : loadedNames.entrySet()) {
+                names.put(name.getKey(), name.getValue());
+            }
+            // Changes made while not listening were missed.
+            totals.invalidateAll();
+            ranks = loadedRanks;
+            ranksValid = loadedRanksValid;
+            loadedAt = snapshot;
+        }
+    }
+
+    private record Entry(String playerUuid, int votes) {
+    }
+
+    /** A txid_current_snapshot() value ("xmin:xmax:xip,..."): which transactions it can see. */
+    private record LoadSnapshot(long xmin, long xmax, Set<Long> inProgress) {
+
+        static LoadSnapshot parse(String text) {
+            String[] parts = text.split(":", 3);
+            Set<Long> inProgress = new HashSet<>();
+            if (parts.length > 2 && !parts[2].isEmpty()) {
+                for (String xid : parts[2].split(",")) {
+                    inProgress.add(Long.parseLong(xid));
+                }
+            }
+            return new LoadSnapshot(Long.parseLong(parts[0]), Long.parseLong(parts[1]), inProgress);
+        }
+
+        /** Whether changes of {@code xid} were committed before the snapshot, i.e. already loaded. */
+        boolean contains(long xid) {
+            return xid < xmin || (xid < xmax && !inProgress.contains(xid));
+        }
+    }
+}
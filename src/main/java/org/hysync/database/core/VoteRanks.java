@@ -0,0 +1,65 @@
+package org.hysync.database.core;
+
+import java.util.Arrays;
+
+/**
+ * Number of players per overall vote total, as a Fenwick (binary indexed) tree over the total:
+ * adding a player and counting the players above a total both take O(log maxTotal), however many
+ * players there are. The tree grows with the highest total seen, up to {@link #MAX_TOTAL}.
+ * Not thread-safe.
+ */
+final class VoteRanks {
+
+    /** Highest total that can be tracked (4 MiB per array at most). */
+    static final int MAX_TOTAL = 1 << 20;
+    private static final int INITIAL_SIZE = 1 << 10;
+
+    /** counts[v] = players with total v. */
+    private int[] counts = new int[INITIAL_SIZE];
+    /** Fenwick tree over counts, 1-based. */
+    private int[] tree = new int[INITIAL_SIZE];
+    private int players;
+
+    /**
+     * Add {@code delta} players with {@code votes}. Totals of 0 or less are not ranked and ignored.
+     *
+     * @return false if the total is above {@link #MAX_TOTAL} (the counts are then incomplete)
+     */
+    boolean add(int votes, int delta) {
+        if (votes <= 0) return true;
+        if (votes > MAX_TOTAL) return false;
+        if (votes >= counts.length) {
+            grow(votes);
+        }
+        counts[votes] += delta;
+        players += delta;
+        for (int i = votes; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+        return true;
+    }
+
+    /** Players with a total strictly above {@code votes}. */
+    int countAbove(int votes) {
+        if (votes <= 0) return players;
+        int atOrBelow = 0;
+        for (int i = Math.min(votes, tree.length - 1); i > 0; i -= i & -i) {
+            atOrBelow += tree[i];
+        }
+        return players - atOrBelow;
+    }
+
+    /** Rebuild the tree large enough for {@code votes}, in O(size). */
+    private void grow(int votes) {
+        int size = Math.min(Integer.highestOneBit(votes) << 1, MAX_TOTAL + 1);
+        counts = Arrays.copyOf(counts, size);
+        tree = new int[size];
+        for (int i = 1; i < size; i++) {
+            tree[i] += counts[i];
+            int parent = i + (i & -i);
+            if (parent < size) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+}
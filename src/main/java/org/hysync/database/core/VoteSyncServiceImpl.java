@@ -4,35 +4,102 @@ import org.hysync.database.api.VoteSyncService;
 import org.hysync.database.repository.VoteDAO;
 import com.hypixel.hytale.logger.HytaleLogger;
 
+import javax.annotation.Nullable;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 public class VoteSyncServiceImpl implements VoteSyncService {
     private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+    /** Monthly partitions kept ready beyond the current month. */
+    private static final int PARTITION_MONTHS_AHEAD = 2;
     private final DatabaseManager databaseManager;
     private final VoteDAO voteDAO;
+    @Nullable
+    private final VoteLeaderboard leaderboard;
+    private final VoteIngestor ingestor;
 
     public VoteSyncServiceImpl(DatabaseManager databaseManager) {
+        this(databaseManager, null, 500, 20);
+    }
+
+    /**
+     * @param leaderboard       in-memory top voters serving {@link #getTopVoters} while it is available; null to always query
+     * @param ingestBatchSize   most votes written per statement by {@link #queueVote}
+     * @param ingestDelayMillis longest a queued vote waits for others to join its batch
+     */
+    public VoteSyncServiceImpl(DatabaseManager databaseManager, @Nullable VoteLeaderboard leaderboard,
+                               int ingestBatchSize, int ingestDelayMillis) {
         this.databaseManager = databaseManager;
-        this.voteDAO = new VoteDAO();
+        this.leaderboard = leaderboard;
+        this.voteDAO = new VoteDAO(databaseManager.hasTrigger(VoteDAO.TOTALS_TRIGGER),
+                databaseManager.hasTable(VoteDAO.WINDOWS_TABLE));
+        if (!voteDAO.hasTotals()) {
+            LOGGER.atWarning().log("[Votes] player_vote_totals trigger missing: run migration V12; totals are summed from the history");
+        }
+        if (!voteDAO.hasWindows()) {
+            LOGGER.atWarning().log("[Votes] player_vote_windows missing: run migration V14; weekly/monthly votes are summed from the history");
+        }
+        this.ingestor = new VoteIngestor(databaseManager, voteDAO, leaderboard, ingestBatchSize, ingestDelayMillis);
     }
 
     @Override
     public int addVote(String playerUuid, String platform, int count) {
+        return submitVote(playerUuid, platform, count).map(VoteResult::total).orElse(-1);
+    }
+
+    @Override
+    public Optional<VoteResult> submitVote(String playerUuid, String platform, int count) {
+        if (isBlank(platform)) {
+            LOGGER.atWarning().log("Rejected vote for %s without a platform", playerUuid);
+            return Optional.empty();
+        }
         try (Connection conn = databaseManager.getConnection()) {
-            voteDAO.addVote(conn, playerUuid, platform, count);
-            return voteDAO.getTotalVotes(conn, playerUuid);
+            int total = voteDAO.addVoteReturningTotal(conn, playerUuid, platform, count);
+            if (leaderboard != null) {
+                leaderboard.update(playerUuid, total, null);
+            }
+            return Optional.of(new VoteResult(total - count, total));
         } catch (SQLException e) {
             LOGGER.atSevere().withCause(e).log("Failed to add vote for %s on %s", playerUuid, platform);
-            return -1;
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public CompletableFuture<VoteResult> queueVote(String playerUuid, String platform, int count) {
+        if (isBlank(platform)) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Vote without a platform"));
+        }
+        return ingestor.submit(playerUuid, platform, count);
+    }
+
+    /** Take before reading a player's total elsewhere (e.g. prefetch); pass to {@link #primeTotal}. */
+    long totalStamp(String playerUuid) {
+        return leaderboard != null ? leaderboard.totalStamp(playerUuid) : 0;
+    }
+
+    /** Cache a total read elsewhere so {@link #getTotalVotes} needs no query (requires the leaderboard). */
+    void primeTotal(String playerUuid, int votes, long loadStamp) {
+        if (leaderboard != null) {
+            leaderboard.primeTotal(playerUuid, votes, loadStamp);
         }
     }
 
+    /** Write every queued vote and stop the ingest thread. Call before the pool shuts down. */
+    public void close() {
+        ingestor.close();
+    }
+
     @Override
     public int getTotalVotes(String playerUuid) {
+        Integer cached = leaderboard != null ? leaderboard.total(playerUuid) : null;
+        if (cached != null) return cached;
         try (Connection conn = databaseManager.getConnection()) {
             return voteDAO.getTotalVotes(conn, playerUuid);
         } catch (SQLException e) {
@@ -41,8 +108,97 @@ public class VoteSyncServiceImpl implements VoteSyncService {
         }
     }
 
+    @Override
+    public int getVotes(String playerUuid, String platform) {
+        try (Connection conn = databaseManager.getConnection()) {
+            return voteDAO.getVotes(conn, playerUuid, platform);
+        } catch (SQLException e) {
+            LOGGER.atSevere().withCause(e).log("Failed to get votes for %s on %s", playerUuid, platform);
+            return 0;
+        }
+    }
+
+    @Override
+    public int getVotes(String playerUuid, VoteWindow window) {
+        if (window == VoteWindow.ALL_TIME) {
+            return getTotalVotes(playerUuid);
+        }
+        try (Connection conn = databaseManager.getConnection()) {
+            return voteDAO.getWindowVotes(conn, playerUuid, truncField(window));
+        } catch (SQLException e) {
+            LOGGER.atSevere().withCause(e).log("Failed to get %s votes for %s", window, playerUuid);
+            return 0;
+        }
+    }
+
+    @Override
+    public List<TopVoter> getTopVoters(VoteWindow window, int limit) {
+        if (window == VoteWindow.ALL_TIME) {
+            return getTopVoters(limit);
+        }
+        try (Connection conn = databaseManager.getConnection()) {
+            return voteDAO.getTopWindowVoters(conn, truncField(window), limit).stream()
+                    .map(v -> new TopVoter(v.name, v.votes))
+                    .collect(Collectors.toList());
+        } catch (SQLException e) {
+            LOGGER.atSevere().withCause(e).log("Failed to get top voters for %s", window);
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public int getRank(String playerUuid) {
+        try (Connection conn = databaseManager.getConnection()) {
+            if (leaderboard != null && leaderboard.isAvailable()) {
+                // The cached total or one primary key lookup, then the rank from the in-memory counts.
+                Integer cached = leaderboard.total(playerUuid);
+                int total = cached != null ? cached : voteDAO.getTotalVotes(conn, playerUuid);
+                if (total <= 0) return 0;
+                int rank = leaderboard.rank(total);
+                if (rank > 0) return rank;
+            }
+            return voteDAO.getRank(conn, playerUuid);
+        } catch (SQLException e) {
+            LOGGER.atSevere().withCause(e).log("Failed to get vote rank for %s", playerUuid);
+            return -1;
+        }
+    }
+
+    @Override
+    public int getRank(String playerUuid, VoteWindow window) {
+        if (window == VoteWindow.ALL_TIME) {
+            return getRank(playerUuid);
+        }
+        try (Connection conn = databaseManager.getConnection()) {
+            return voteDAO.getWindowRank(conn, playerUuid, truncField(window));
+        } catch (SQLException e) {
+            LOGGER.atSevere().withCause(e).log("Failed to get %s vote rank for %s", window, playerUuid);
+            return -1;
+        }
+    }
+
+    /**
+     * Create the monthly partitions of player_votes for the next months (V14), so inserts never
+     * fall into the default partition. Returns false if that failed.
+     */
+    public boolean ensurePartitions() {
+        try (Connection conn = databaseManager.getConnection()) {
+            voteDAO.ensurePartitions(conn, PARTITION_MONTHS_AHEAD);
+            return true;
+        } catch (SQLException e) {
+            LOGGER.atWarning().withCause(e).log("[Votes] Failed to create player_votes partitions");
+            return false;
+        }
+    }
+
     @Override
     public List<TopVoter> getTopVoters(int limit) {
+        if (leaderboard != null && leaderboard.isAvailable()) {
+            List<TopVoter> top = leaderboard.top(limit);
+            if (top != null) {
+                return top;
+            }
+        }
         try (Connection conn = databaseManager.getConnection()) {
             return voteDAO.getTopVoters(conn, limit).stream()
                     .map(v -> new TopVoter(v.name, v.votes))
@@ -52,4 +208,14 @@ public class VoteSyncServiceImpl implements VoteSyncService {
             return Collections.emptyList();
         }
     }
+
+    /** Platform '' is the key of the overall total in player_vote_totals, so it cannot name a platform. */
+    private static boolean isBlank(String platform) {
+        return platform == null || platform.isBlank();
+    }
+
+    /** The date_trunc field (and player_vote_windows.window_kind) of a window. */
+    private static String truncField(VoteWindow window) {
+        return window.name().toLowerCase(Locale.ROOT);
+    }
 }
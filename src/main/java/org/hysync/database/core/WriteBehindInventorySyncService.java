@@ -0,0 +1,326 @@
+package org.hysync.database.core;
+
+import com.hypixel.hytale.logger.HytaleLogger;
+import org.hysync.database.api.InventoryDiff;
+import org.hysync.database.api.InventorySnapshot;
+import org.hysync.database.api.InventorySyncService;
+import org.hysync.database.api.VersionedInventory;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind layer in front of {@link InventorySyncServiceImpl}. {@code setInventory} and
+ * {@code setHotbarManager} only record the latest snapshot per player; pending snapshots are
+ * written on the flush interval, when the player's session is released, and on shutdown.
+ * <p>
+ * Reads see pending snapshots (read-your-writes on this server). Set methods return true once
+ * the snapshot is buffered; a failed flush keeps the snapshot queued (merged under anything newer)
+ * and retries it a few times before dropping it with a log entry.
+ * <p>
+ * A session is only released once its final snapshot is written. If that fails, the release is
+ * deferred: the session stops being renewed and is released by the flush task as soon as the
+ * snapshot is written or dropped.
+ */
+public class WriteBehindInventorySyncService implements InventorySyncService {
+
+    private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+    /** Consecutive failed flushes after which a snapshot is dropped instead of retried. */
+    private static final int MAX_FLUSH_ATTEMPTS = 3;
+    /** Players written per setInventories transaction during flushAll. */
+    private static final int FLUSH_BATCH_SIZE = 500;
+
+    private final InventorySyncService delegate;
+    @Nullable
+    private final InventorySyncServiceImpl sessions;
+    private final Map<String, PendingSave> pending = new ConcurrentHashMap<>();
+    // player uuid -> server id of sessions to release once the player's snapshot is gone from pending.
+    private final Map<String, String> deferredReleases = new ConcurrentHashMap<>();
+    // Serializes flushes so an older snapshot can never be written after a newer one.
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    public WriteBehindInventorySyncService(InventorySyncService delegate) {
+        this(delegate, null);
+    }
+
+    /**
+     * @param sessions the underlying service whose heartbeat must stop renewing a session whose release is deferred
+     */
+    public WriteBehindInventorySyncService(InventorySyncService delegate, @Nullable InventorySyncServiceImpl sessions) {
+        this.delegate = delegate;
+        this.sessions = sessions;
+    }
+
+    @Override
+    public Optional<String> getInventory(String playerUuid) {
+        PendingSave save = pending.get(playerUuid);
+        if (save != null && save.inventoryJson() != null) {
+            return Optional.of(save.inventoryJson());
+        }
+        return delegate.getInventory(playerUuid);
+    }
+
+    @Override
+    public boolean setInventory(String playerUuid, @Nullable String displayName, String inventoryJson, int inventoryVersion) {
+        if (playerUuid == null || inventoryJson == null) return false;
+        pending.merge(playerUuid, new PendingSave(displayName, inventoryJson, inventoryVersion, null, 0), PendingSave::then);
+        return true;
+    }
+
+    @Override
+    public Optional<VersionedInventory> getVersionedInventory(String playerUuid) {
+        // The revision must describe the stored row, so write anything buffered first.
+        flush(playerUuid);
+        return delegate.getVersionedInventory(playerUuid);
+    }
+
+    @Override
+    public OptionalLong setInventory(String playerUuid, @Nullable String displayName, String inventoryJson, int inventoryVersion,
+                                     long expectedRevision) {
+        // Conditional writes are never buffered, and a pending snapshot flushed later would overwrite them.
+        if (!flush(playerUuid)) return OptionalLong.empty();
+        return delegate.setInventory(playerUuid, displayName, inventoryJson, inventoryVersion, expectedRevision);
+    }
+
+    @Override
+    public boolean savePlayerState(String playerUuid, @Nullable String displayName, String inventoryJson, int inventoryVersion,
+                                   @Nullable String hotbarManagerJson) {
+        if (playerUuid == null || inventoryJson == null) return false;
+        pending.merge(playerUuid, new PendingSave(displayName, inventoryJson, inventoryVersion, hotbarManagerJson, 0),
+            PendingSave::then);
+        return true;
+    }
+
+    @Override
+    public boolean updateContainers(String playerUuid, Map<String, String> containers) {
+        if (playerUuid == null || containers == null) return false;
+        if (containers.isEmpty()) return true;
+        // Patch a buffered full snapshot in memory; otherwise there is nothing to coalesce with.
+        if (patchPending(playerUuid, containers)) return true;
+        // Write through under the flush lock, so no older full snapshot can be committed after it.
+        flushLock.lock();
+        try {
+            return patchPending(playerUuid, containers) || delegate.updateContainers(playerUuid, containers);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private boolean patchPending(String playerUuid, Map<String, String> containers) {
+        boolean[] patched = {false};
+        pending.computeIfPresent(playerUuid, (k, save) -> {
+            if (save.inventoryJson() == null) return save;
+            patched[0] = true;
+            return save.then(new PendingSave(null, InventoryDiff.apply(save.inventoryJson(), containers),
+                save.inventoryVersion(), null, 0));
+        });
+        return patched[0];
+    }
+
+    @Override
+    public boolean setInventories(Collection<InventorySnapshot> snapshots) {
+        if (snapshots == null) return false;
+        for (InventorySnapshot snapshot : snapshots) {
+            pending.merge(snapshot.playerUuid(), new PendingSave(snapshot.displayName(), snapshot.inventoryJson(),
+                snapshot.inventoryVersion(), snapshot.hotbarManagerJson(), 0), PendingSave::then);
+        }
+        return true;
+    }
+
+    @Override
+    public Optional<String> getHotbarManager(String playerUuid) {
+        PendingSave save = pending.get(playerUuid);
+        if (save != null && save.hotbarManagerJson() != null) {
+            return Optional.of(save.hotbarManagerJson());
+        }
+        return delegate.getHotbarManager(playerUuid);
+    }
+
+    @Override
+    public boolean setHotbarManager(String playerUuid, String hotbarManagerJson) {
+        if (playerUuid == null || hotbarManagerJson == null) return false;
+        pending.merge(playerUuid, new PendingSave(null, null, 0, hotbarManagerJson, 0), PendingSave::then);
+        return true;
+    }
+
+    @Override
+    public Optional<PlayerInfo> getPlayer(String playerUuid) {
+        return delegate.getPlayer(playerUuid);
+    }
+
+    @Override
+    public Optional<String> getCurrentServerId(String playerUuid) {
+        return delegate.getCurrentServerId(playerUuid);
+    }
+
+    @Override
+    public boolean claimSession(String playerUuid, String serverId) {
+        // Back on this server before a deferred release ran: the session is live again.
+        deferredReleases.remove(playerUuid, serverId);
+        return delegate.claimSession(playerUuid, serverId);
+    }
+
+    @Override
+    public void releaseSession(String playerUuid, String serverId) {
+        // The next server must see the final inventory before the session is free. If it cannot,
+        // keep the session claimed but stop renewing it; the flush task releases it once the
+        // queued snapshot is written or dropped.
+        if (!flush(playerUuid)) {
+            LOGGER.atSevere().log("[WriteBehind] Deferring release of %s's session: inventory snapshot could not be written",
+                playerUuid);
+            if (sessions != null) {
+                sessions.stopRenewing(playerUuid, serverId);
+            }
+            deferredReleases.put(playerUuid, serverId);
+            return;
+        }
+        delegate.releaseSession(playerUuid, serverId);
+    }
+
+    @Override
+    public Set<String> getOnlinePlayers(String serverId) {
+        return delegate.getOnlinePlayers(serverId);
+    }
+
+    @Override
+    public Map<String, Integer> getOnlineCounts() {
+        return delegate.getOnlineCounts();
+    }
+
+    /**
+     * Write this player's pending snapshot now, if any.
+     *
+     * @return false if a pending snapshot could not be written (it stays queued)
+     */
+    public boolean flush(String playerUuid) {
+        flushLock.lock();
+        try {
+            return flushBatch(List.of(playerUuid)) == 0;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Write every pending snapshot, in batches of players per transaction.
+     * Called by the plugin scheduler and on shutdown.
+     *
+     * @return number of snapshots that failed to flush
+     */
+    public int flushAll() {
+        flushLock.lock();
+        try {
+            int failed = 0;
+            List<String> players = new ArrayList<>(pending.keySet());
+            for (int from = 0; from < players.size(); from += FLUSH_BATCH_SIZE) {
+                failed += flushBatch(players.subList(from, Math.min(players.size(), from + FLUSH_BATCH_SIZE)));
+            }
+            if (failed > 0) {
+                LOGGER.atWarning().log("[WriteBehind] %d inventory snapshot(s) failed to flush", failed);
+            }
+            releaseDeferred();
+            return failed;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /** Release deferred sessions whose snapshot is no longer pending (written, or dropped after retries). */
+    private void releaseDeferred() {
+        for (Map.Entry<String, String> release : deferredReleases.entrySet()) {
+            if (pending.containsKey(release.getKey())) continue;
+            if (deferredReleases.remove(release.getKey(), release.getValue())) {
+                delegate.releaseSession(release.getKey(), release.getValue());
+            }
+        }
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    private int flushBatch(List<String> players) {
+        List<InventorySnapshot> snapshots = new ArrayList<>();
+        Map<String, PendingSave> taken = new LinkedHashMap<>();
+        List<String> hotbarOnly = new ArrayList<>();
+        for (String playerUuid : players) {
+            // Left in pending while it is written, so reads keep seeing it until it is committed.
+            PendingSave save = pending.get(playerUuid);
+            if (save == null) continue;
+            taken.put(playerUuid, save);
+            if (save.inventoryJson() != null) {
+                snapshots.add(new InventorySnapshot(playerUuid, save.displayName(), save.inventoryJson(),
+                    save.inventoryVersion(), save.hotbarManagerJson()));
+            } else {
+                hotbarOnly.add(playerUuid);
+            }
+        }
+        int failed = 0;
+        if (!snapshots.isEmpty() && !delegate.setInventories(snapshots)) {
+            // The whole transaction rolled back; retry one by one so a single bad row
+            // does not hold back everyone else in the batch.
+            for (InventorySnapshot snapshot : snapshots) {
+                if (snapshots.size() == 1 || !delegate.setInventories(List.of(snapshot))) {
+                    requeue(snapshot.playerUuid(), taken.get(snapshot.playerUuid()));
+                    failed++;
+                    taken.remove(snapshot.playerUuid());
+                }
+            }
+        }
+        for (String playerUuid : hotbarOnly) {
+            PendingSave save = taken.get(playerUuid);
+            if (!delegate.setHotbarManager(playerUuid, save.hotbarManagerJson())) {
+                requeue(playerUuid, save);
+                failed++;
+                taken.remove(playerUuid);
+            }
+        }
+        for (Map.Entry<String, PendingSave> written : taken.entrySet()) {
+            // Only if nothing newer was merged in meanwhile; a merged entry still holds this
+            // snapshot underneath and is written on the next flush.
+            pending.remove(written.getKey(), written.getValue());
+        }
+        return failed;
+    }
+
+    private void requeue(String playerUuid, PendingSave save) {
+        if (save.failures() + 1 >= MAX_FLUSH_ATTEMPTS) {
+            if (pending.remove(playerUuid, save)) {
+                LOGGER.atSevere().log("[WriteBehind] Dropping inventory snapshot for %s after %d failed flushes",
+                    playerUuid, MAX_FLUSH_ATTEMPTS);
+            }
+            return;
+        }
+        // Anything newer merged in meanwhile already holds this snapshot underneath (and starts its own count).
+        pending.replace(playerUuid, save, save.failedOnce());
+    }
+
+    /** Latest buffered state for one player; null fields mean "not changed". */
+    private record PendingSave(@Nullable String displayName, @Nullable String inventoryJson, int inventoryVersion,
+                               @Nullable String hotbarManagerJson, int failures) {
+
+        PendingSave failedOnce() {
+            return new PendingSave(displayName, inventoryJson, inventoryVersion, hotbarManagerJson, failures + 1);
+        }
+
+        /** Combine with a newer save: newer non-null values win and the retry count starts over. */
+        PendingSave then(PendingSave newer) {
+            boolean newerInventory = newer.inventoryJson != null;
+            return new PendingSave(
+                newer.displayName != null ? newer.displayName : displayName,
+                newerInventory ? newer.inventoryJson : inventoryJson,
+                newerInventory ? newer.inventoryVersion : inventoryVersion,
+                newer.hotbarManagerJson != null ? newer.hotbarManagerJson : hotbarManagerJson,
+                0);
+        }
+    }
+}
@@ -3,16 +3,52 @@ package org.hysync.database.repository;
 import org.hysync.database.api.StashSyncService.StashModel;
 import com.hypixel.hytale.logger.HytaleLogger;
 
+import org.hysync.database.api.StashSyncService.StashSummary;
+
 import java.sql.*;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalLong;
 
 public class StashDAO {
     private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+    /** Trigger from migration V8 that maintains player_stashes.revision. */
+    public static final String REVISION_TRIGGER = "trg_player_stashes_revision";
+    /** Function from migration V10 used for slot updates. */
+    public static final String SLOT_FUNCTION = "hysync_apply_stash_slots";
+    /**
+     * Number of non-null items in player_stashes.items_json (array elements or object values),
+     * computed in the database so the payload is never sent.
+     */
+    public static final String ITEM_COUNT =
+            "CASE jsonb_typeof(items_json) " +
+            "WHEN 'array' THEN (SELECT COUNT(*) FROM jsonb_array_elements(items_json) x WHERE x.value <> 'null'::jsonb) " +
+            "WHEN 'object' THEN (SELECT COUNT(*) FROM jsonb_each(items_json) x WHERE x.value <> 'null'::jsonb) " +
+            "ELSE 0 END";
+
+    private final boolean revisions;
+    private final String revisionColumn;
+
+    public StashDAO() {
+        this(false);
+    }
+
+    /**
+     * @param revisions whether player_stashes has the V8 revision column; without it revisions read as 0
+     */
+    public StashDAO(boolean revisions) {
+        this.revisions = revisions;
+        this.revisionColumn = revisions ? "revision" : "0 AS revision";
+    }
 
     public Optional<StashModel> getStash(Connection conn, String playerUuid, String stashName) throws SQLException {
-        String sql = "SELECT stash_size, items_json FROM player_stashes WHERE player_uuid = ? AND stash_name = ?";
+        String sql = "SELECT stash_size, items_json, " + revisionColumn + " FROM player_stashes WHERE player_uuid = ? AND stash_name = ?";
         try (PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, playerUuid);
             stmt.setString(2, stashName);
@@ -22,7 +58,8 @@ public class StashDAO {
                             playerUuid,
                             stashName,
                             rs.getInt("stash_size"),
-                            rs.getString("items_json")));
+                            rs.getString("items_json"),
+                            rs.getLong("revision")));
                 }
             }
         }
@@ -31,23 +68,93 @@ public class StashDAO {
 
     public List<StashModel> getStashes(Connection conn, String playerUuid) throws SQLException {
         List<StashModel> list = new ArrayList<>();
-        String sql = "SELECT stash_name, stash_size, items_json FROM player_stashes WHERE player_uuid = ?";
+        String sql = "SELECT stash_name, stash_size, items_json, " + revisionColumn + " FROM player_stashes WHERE player_uuid = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, playerUuid);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    list.add(new StashModel(
+                            playerUuid,
+                            rs.getString("stash_name"),
+                            rs.getInt("stash_size"),
+                            rs.getString("items_json"),
+                            rs.getLong("revision")));
+                }
+            }
+        }
+        return list;
+    }
+
+    /** Only the named stashes (those that exist). */
+    public List<StashModel> getStashes(Connection conn, String playerUuid, Collection<String> stashNames) throws SQLException {
+        List<StashModel> list = new ArrayList<>();
+        String sql = "SELECT stash_name, stash_size, items_json, " + revisionColumn +
+                " FROM player_stashes WHERE player_uuid = ? AND stash_name = ANY(?)";
         try (PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, playerUuid);
+            stmt.setArray(2, conn.createArrayOf("text", stashNames.toArray()));
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
                     list.add(new StashModel(
                             playerUuid,
                             rs.getString("stash_name"),
                             rs.getInt("stash_size"),
-                            rs.getString("items_json")));
+                            rs.getString("items_json"),
+                            rs.getLong("revision")));
                 }
             }
         }
         return list;
     }
 
-    public void saveStash(Connection conn, String playerUuid, String name, int size, String itemsJson)
+    /**
+     * Name and revision of every stash of a player (0 without V8), to check cached copies
+     * without transferring items or computing item counts.
+     */
+    public Map<String, Long> getStashRevisions(Connection conn, String playerUuid) throws SQLException {
+        Map<String, Long> revisions = new LinkedHashMap<>();
+        String sql = "SELECT stash_name, " + revisionColumn + " FROM player_stashes WHERE player_uuid = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, playerUuid);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    revisions.put(rs.getString("stash_name"), rs.getLong("revision"));
+                }
+            }
+        }
+        return revisions;
+    }
+
+    public List<StashSummary> getStashSummaries(Connection conn, String playerUuid) throws SQLException {
+        List<StashSummary> list = new ArrayList<>();
+        String sql = "SELECT stash_name, stash_size, updated_at, " + ITEM_COUNT + " AS item_count, " + revisionColumn +
+                " FROM player_stashes WHERE player_uuid = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, playerUuid);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Timestamp updatedAt = rs.getTimestamp("updated_at");
+                    list.add(new StashSummary(
+                            rs.getString("stash_name"),
+                            rs.getInt("stash_size"),
+                            updatedAt != null ? updatedAt.toInstant() : Instant.EPOCH,
+                            rs.getInt("item_count"),
+                            rs.getLong("revision")));
+                }
+            }
+        }
+        return list;
+    }
+
+    /** SQL expression for the revision column: the V8 column, or a constant 0 without it. */
+    public String revisionColumn() {
+        return revisionColumn;
+    }
+
+    /**
+     * @return the stash's new revision, or 0 without the V8 revision column
+     */
+    public long saveStash(Connection conn, String playerUuid, String name, int size, String itemsJson)
             throws SQLException {
         // Ensure player exists in players table first (simplistic check, better handled
         // by upsert upstream or cascade)
@@ -58,17 +165,158 @@ public class StashDAO {
                 "ON CONFLICT (player_uuid, stash_name) DO UPDATE SET " +
                 "stash_size = EXCLUDED.stash_size, " +
                 "items_json = EXCLUDED.items_json, " +
-                "updated_at = NOW()";
+                "updated_at = NOW()" +
+                (revisions ? " RETURNING revision" : "");
 
         try (PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, playerUuid);
             stmt.setString(2, name);
             stmt.setInt(3, size);
             stmt.setString(4, itemsJson);
-            stmt.executeUpdate();
+            if (!revisions) {
+                stmt.executeUpdate();
+                return 0;
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Upsert many stashes in one statement (write-behind flush). Each (player, name) may appear
+     * only once.
+     *
+     * @return the new revision of each stash in input order, or zeros without the V8 revision column
+     */
+    public long[] saveStashes(Connection conn, List<StashModel> stashes) throws SQLException {
+        long[] result = new long[stashes.size()];
+        if (stashes.isEmpty()) return result;
+        String sql = "INSERT INTO player_stashes (player_uuid, stash_name, stash_size, items_json, updated_at) " +
+                "SELECT t.player_uuid, t.stash_name, t.stash_size, t.items_json::jsonb, NOW() " +
+                "FROM unnest(?::text[], ?::text[], ?::int[], ?::text[]) AS t(player_uuid, stash_name, stash_size, items_json) " +
+                "ON CONFLICT (player_uuid, stash_name) DO UPDATE SET " +
+                "stash_size = EXCLUDED.stash_size, " +
+                "items_json = EXCLUDED.items_json, " +
+                "updated_at = NOW()" +
+                (revisions ? " RETURNING player_uuid, stash_name, revision" : "");
+        String[] uuids = new String[stashes.size()];
+        String[] names = new String[stashes.size()];
+        Integer[] sizes = new Integer[stashes.size()];
+        String[] items = new String[stashes.size()];
+        for (int i = 0; i < stashes.size(); i++) {
+            StashModel stash = stashes.get(i);
+            uuids[i] = stash.ownerUuid();
+            names[i] = stash.name();
+            sizes[i] = stash.size();
+            items[i] = stash.itemsJson();
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setArray(1, conn.createArrayOf("text", uuids));
+            stmt.setArray(2, conn.createArrayOf("text", names));
+            stmt.setArray(3, conn.createArrayOf("int4", sizes));
+            stmt.setArray(4, conn.createArrayOf("text", items));
+            if (!revisions) {
+                stmt.executeUpdate();
+                return result;
+            }
+            // RETURNING order is unspecified, so match rows back by key.
+            Map<String, Long> saved = new HashMap<>();
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    saved.put(rs.getString(1) + '\0' + rs.getString(2), rs.getLong(3));
+                }
+            }
+            for (int i = 0; i < stashes.size(); i++) {
+                result[i] = saved.getOrDefault(uuids[i] + '\0' + names[i], 0L);
+            }
+            return result;
         }
     }
 
+    /**
+     * Compare-and-set save (requires V8). An expected revision of 0 only creates a new stash.
+     *
+     * @return the new revision, or empty if the stored revision differs
+     */
+    public OptionalLong saveStashIfRevision(Connection conn, String playerUuid, String name, int size, String itemsJson,
+            long expectedRevision) throws SQLException {
+        // The V8 trigger bumps revision on UPDATE, so RETURNING yields the new value.
+        String sql = expectedRevision == 0
+                ? "INSERT INTO player_stashes (player_uuid, stash_name, stash_size, items_json, updated_at) " +
+                  "VALUES (?, ?, ?, ?::jsonb, NOW()) ON CONFLICT (player_uuid, stash_name) DO NOTHING RETURNING revision"
+                : "UPDATE player_stashes SET stash_size = ?, items_json = ?::jsonb, updated_at = NOW() " +
+                  "WHERE player_uuid = ? AND stash_name = ? AND revision = ? RETURNING revision";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            if (expectedRevision == 0) {
+                stmt.setString(1, playerUuid);
+                stmt.setString(2, name);
+                stmt.setInt(3, size);
+                stmt.setString(4, itemsJson);
+            } else {
+                stmt.setInt(1, size);
+                stmt.setString(2, itemsJson);
+                stmt.setString(3, playerUuid);
+                stmt.setString(4, name);
+                stmt.setLong(5, expectedRevision);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? OptionalLong.of(rs.getLong(1)) : OptionalLong.empty();
+            }
+        }
+    }
+
+    /**
+     * Apply slot changes server-side with V10's {@code hysync_apply_stash_slots}, so only the
+     * changed items are sent.
+     *
+     * @param changesJson {@code {"<slot>": item | null}}
+     * @param maxSlot     highest slot changed; must be below the stash size
+     * @return the new revision (0 without V8), or empty if there is no such stash or the slot is out of range
+     */
+    public OptionalLong applySlots(Connection conn, String playerUuid, String stashName, String changesJson, int maxSlot)
+            throws SQLException {
+        String sql = "UPDATE player_stashes SET items_json = hysync_apply_stash_slots(items_json, ?::jsonb), " +
+                "updated_at = NOW() WHERE player_uuid = ? AND stash_name = ? AND stash_size > ? RETURNING " + revisionColumn;
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, changesJson);
+            stmt.setString(2, playerUuid);
+            stmt.setString(3, stashName);
+            stmt.setInt(4, maxSlot);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? OptionalLong.of(rs.getLong(1)) : OptionalLong.empty();
+            }
+        }
+    }
+
+    /**
+     * Swap two slots server-side (V10); the items never leave the database.
+     *
+     * @return the new revision (0 without V8), or empty if there is no such stash or a slot is out of range
+     */
+    public OptionalLong swapSlots(Connection conn, String playerUuid, String stashName, int first, int second)
+            throws SQLException {
+        String sql = "UPDATE player_stashes SET items_json = hysync_apply_stash_slots(items_json, " +
+                "jsonb_build_object(?::text, hysync_stash_slot(items_json, ?), ?::text, hysync_stash_slot(items_json, ?))), " +
+                "updated_at = NOW() WHERE player_uuid = ? AND stash_name = ? AND stash_size > ? RETURNING " + revisionColumn;
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, first);
+            stmt.setInt(2, second);
+            stmt.setInt(3, second);
+            stmt.setInt(4, first);
+            stmt.setString(5, playerUuid);
+            stmt.setString(6, stashName);
+            stmt.setInt(7, Math.max(first, second));
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? OptionalLong.of(rs.getLong(1)) : OptionalLong.empty();
+            }
+        }
+    }
+
+    public boolean hasRevisions() {
+        return revisions;
+    }
+
     public boolean deleteStash(Connection conn, String playerUuid, String stashName) throws SQLException {
         String sql = "DELETE FROM player_stashes WHERE player_uuid = ? AND stash_name = ?";
         try (PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -78,13 +326,17 @@ public class StashDAO {
         }
     }
 
-    public boolean renameStash(Connection conn, String playerUuid, String oldName, String newName) throws SQLException {
-        String sql = "UPDATE player_stashes SET stash_name = ?, updated_at = NOW() WHERE player_uuid = ? AND stash_name = ?";
+    /** @return the revision after the rename (0 without V8), or empty if there is no such stash */
+    public OptionalLong renameStash(Connection conn, String playerUuid, String oldName, String newName) throws SQLException {
+        String sql = "UPDATE player_stashes SET stash_name = ?, updated_at = NOW() WHERE player_uuid = ? AND stash_name = ? " +
+                "RETURNING " + revisionColumn;
         try (PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, newName);
             stmt.setString(2, playerUuid);
             stmt.setString(3, oldName);
-            return stmt.executeUpdate() > 0;
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? OptionalLong.of(rs.getLong(1)) : OptionalLong.empty();
+            }
         }
     }
 
@@ -101,6 +353,20 @@ public class StashDAO {
         return 0;
     }
 
+    /** Like {@link #getMaxStashes} but empty when the player has no settings row. */
+    public Optional<Integer> findMaxStashes(Connection conn, String playerUuid) throws SQLException {
+        String sql = "SELECT max_stashes FROM player_stash_settings WHERE player_uuid = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, playerUuid);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return Optional.of(rs.getInt("max_stashes"));
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
     public void setMaxStashes(Connection conn, String playerUuid, int maxStashes) throws SQLException {
         String sql = "INSERT INTO player_stash_settings (player_uuid, max_stashes, updated_at) " +
                 "VALUES (?, ?, NOW()) " +
@@ -2,9 +2,151 @@ package org.hysync.database.repository;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class VoteDAO {
+    /** Trigger from migration V12 that keeps player_vote_totals for every insert into player_votes. */
+    public static final String TOTALS_TRIGGER = "trg_player_votes_totals";
+    /** player_vote_totals.platform of the overall (all platforms) total. */
+    public static final String ALL_PLATFORMS = "";
+    /** Weekly/monthly rollup table from migration V14. */
+    public static final String WINDOWS_TABLE = "player_vote_windows";
+    /** Function from V14 that creates the upcoming monthly partitions of player_votes. */
+    public static final String PARTITION_FUNCTION = "hysync_ensure_vote_partitions";
+
+    private final boolean totals;
+    private final boolean windows;
+
+    public VoteDAO() {
+        this(false);
+    }
+
+    /**
+     * @param totals whether player_vote_totals and its trigger (V12) exist; without them totals are summed from the history
+     */
+    public VoteDAO(boolean totals) {
+        this(totals, false);
+    }
+
+    /**
+     * @param windows whether player_vote_windows (V14) exists; without it windows are summed from the history
+     */
+    public VoteDAO(boolean totals, boolean windows) {
+        this.totals = totals;
+        this.windows = windows;
+    }
+
+    public boolean hasTotals() {
+        return totals;
+    }
+
+    public boolean hasWindows() {
+        return windows;
+    }
+
+    /** Scalar SQL expression for the overall total of the player in {@code playerUuidColumn}, for queries built elsewhere. */
+    public String totalVotesExpression(String playerUuidColumn) {
+        return totals
+                ? "COALESCE((SELECT t.votes FROM player_vote_totals t WHERE t.player_uuid = " + playerUuidColumn + " AND t.platform = ''), 0)"
+                : "(SELECT COALESCE(SUM(v.votes), 0) FROM player_votes v WHERE v.player_uuid = " + playerUuidColumn + ")";
+    }
+
+    /**
+     * Insert a vote and return the player's overall total including it. With V12 the insert and
+     * the read of the total run in one transaction: the trigger's upsert locks the player's total
+     * row until commit, so concurrent votes are ordered and {@code total - count} is exactly the
+     * total before this vote. Without V12 the total is summed from the history and concurrent votes
+     * are not ordered.
+     *
+     * @return the new overall total
+     */
+    public int addVoteReturningTotal(Connection conn, String playerUuid, String platform, int count) throws SQLException {
+        if (!totals) {
+            // The main query does not see the CTE's insert, so add it to the sum.
+            String sql = "WITH vote AS (" +
+                    "  INSERT INTO player_votes (player_uuid, platform, votes, created_at) VALUES (?, ?, ?, NOW()) " +
+                    "  RETURNING player_uuid, votes" +
+                    ") SELECT vote.votes + (SELECT COALESCE(SUM(v.votes), 0) FROM player_votes v WHERE v.player_uuid = vote.player_uuid) " +
+                    "FROM vote";
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setString(1, playerUuid);
+                stmt.setString(2, platform);
+                stmt.setInt(3, count);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (!rs.next()) throw new SQLException("Vote insert returned no total");
+                    return rs.getInt(1);
+                }
+            }
+        }
+        conn.setAutoCommit(false);
+        try {
+            addVote(conn, playerUuid, platform, count);
+            Map<String, Integer> total = readTotals(conn, new String[]{playerUuid});
+            if (!total.containsKey(playerUuid)) throw new SQLException("Vote insert left no total");
+            conn.commit();
+            return total.get(playerUuid);
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Insert many votes (V12 required) with one statement and read the resulting totals in the
+     * same transaction. The trigger adds them to the totals with one update per player and platform.
+     *
+     * @return each player's new overall total
+     */
+    public Map<String, Integer> addVotes(Connection conn, List<Vote> votes) throws SQLException {
+        String sql = "INSERT INTO player_votes (player_uuid, platform, votes, created_at) " +
+                "SELECT player_uuid, platform, votes, NOW() " +
+                "FROM unnest(?::text[], ?::text[], ?::int[]) WITH ORDINALITY AS t(player_uuid, platform, votes, ord) " +
+                "ORDER BY ord";
+        String[] uuids = new String[votes.size()];
+        String[] platforms = new String[votes.size()];
+        Integer[] counts = new Integer[votes.size()];
+        for (int i = 0; i < votes.size(); i++) {
+            uuids[i] = votes.get(i).playerUuid();
+            platforms[i] = votes.get(i).platform();
+            counts[i] = votes.get(i).count();
+        }
+        conn.setAutoCommit(false);
+        try {
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setArray(1, conn.createArrayOf("text", uuids));
+                stmt.setArray(2, conn.createArrayOf("text", platforms));
+                stmt.setArray(3, conn.createArrayOf("int4", counts));
+                stmt.executeUpdate();
+            }
+            Map<String, Integer> result = readTotals(conn, uuids);
+            conn.commit();
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /** Overall totals of the given players, read inside the caller's transaction. */
+    private Map<String, Integer> readTotals(Connection conn, String[] playerUuids) throws SQLException {
+        String sql = "SELECT player_uuid, votes FROM player_vote_totals WHERE platform = '' AND player_uuid = ANY(?)";
+        Map<String, Integer> result = new HashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setArray(1, conn.createArrayOf("text", playerUuids));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    result.put(rs.getString(1), rs.getInt(2));
+                }
+            }
+        }
+        return result;
+    }
 
     public void addVote(Connection conn, String playerUuid, String platform, int count) throws SQLException {
         String sql = "INSERT INTO player_votes (player_uuid, platform, votes, created_at) VALUES (?, ?, ?, NOW())";
@@ -17,7 +159,9 @@ public class VoteDAO {
     }
 
     public int getVotes(Connection conn, String playerUuid, String platform) throws SQLException {
-        String sql = "SELECT SUM(votes) as total FROM player_votes WHERE player_uuid = ? AND platform = ?";
+        String sql = totals
+                ? "SELECT votes as total FROM player_vote_totals WHERE player_uuid = ? AND platform = ?"
+                : "SELECT SUM(votes) as total FROM player_votes WHERE player_uuid = ? AND platform = ?";
         try (PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, playerUuid);
             stmt.setString(2, platform);
@@ -31,6 +175,9 @@ public class VoteDAO {
     }
 
     public int getTotalVotes(Connection conn, String playerUuid) throws SQLException {
+        if (totals) {
+            return getVotes(conn, playerUuid, ALL_PLATFORMS);
+        }
         String sql = "SELECT SUM(votes) as total FROM player_votes WHERE player_uuid = ?";
         try (PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, playerUuid);
@@ -48,11 +195,17 @@ public class VoteDAO {
         // Note: Joining with players table to get display names.
         // This assumes players table is populated. If not, name might be null or we
         // fallback to UUID.
-        String sql = "SELECT p.display_name, v.player_uuid, SUM(v.votes) as total " +
-                "FROM player_votes v " +
-                "LEFT JOIN players p ON v.player_uuid = p.uuid " +
-                "GROUP BY v.player_uuid, p.display_name " +
-                "ORDER BY total DESC LIMIT ?";
+        String sql = totals
+                ? "SELECT p.display_name, t.player_uuid, t.votes as total " +
+                  "FROM player_vote_totals t " +
+                  "LEFT JOIN players p ON t.player_uuid = p.uuid " +
+                  "WHERE t.platform = '' " +
+                  "ORDER BY t.votes DESC LIMIT ?"
+                : "SELECT p.display_name, v.player_uuid, SUM(v.votes) as total " +
+                  "FROM player_votes v " +
+                  "LEFT JOIN players p ON v.player_uuid = p.uuid " +
+                  "GROUP BY v.player_uuid, p.display_name " +
+                  "ORDER BY total DESC LIMIT ?";
 
         try (PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, limit);
@@ -68,6 +221,133 @@ public class VoteDAO {
         return list;
     }
 
+    /**
+     * Votes of a player in the current calendar window.
+     *
+     * @param window date_trunc field of the window: "week" or "month"
+     */
+    public int getWindowVotes(Connection conn, String playerUuid, String window) throws SQLException {
+        String sql = windows
+                ? "SELECT votes as total FROM player_vote_windows " +
+                  "WHERE window_kind = ? AND window_start = date_trunc(?, LOCALTIMESTAMP)::date AND player_uuid = ?"
+                : "SELECT SUM(votes) as total FROM player_votes " +
+                  "WHERE created_at >= date_trunc(?, LOCALTIMESTAMP) AND player_uuid = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int i = 1;
+            stmt.setString(i++, window);
+            if (windows) stmt.setString(i++, window);
+            stmt.setString(i, playerUuid);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getInt("total");
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Top voters of the current calendar window.
+     *
+     * @param window date_trunc field of the window: "week" or "month"
+     */
+    public List<TopVoter> getTopWindowVoters(Connection conn, String window, int limit) throws SQLException {
+        String sql = windows
+                ? "SELECT p.display_name, w.player_uuid, w.votes as total " +
+                  "FROM player_vote_windows w " +
+                  "LEFT JOIN players p ON w.player_uuid = p.uuid " +
+                  "WHERE w.window_kind = ? AND w.window_start = date_trunc(?, LOCALTIMESTAMP)::date " +
+                  "ORDER BY w.votes DESC LIMIT ?"
+                // Without V14 this scans the history (created_at is not indexed).
+                : "SELECT p.display_name, v.player_uuid, SUM(v.votes) as total " +
+                  "FROM player_votes v " +
+                  "LEFT JOIN players p ON v.player_uuid = p.uuid " +
+                  "WHERE v.created_at >= date_trunc(?, LOCALTIMESTAMP) " +
+                  "GROUP BY v.player_uuid, p.display_name " +
+                  "ORDER BY total DESC LIMIT ?";
+        List<TopVoter> list = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int i = 1;
+            stmt.setString(i++, window);
+            if (windows) stmt.setString(i++, window);
+            stmt.setInt(i, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String name = rs.getString("display_name");
+                    if (name == null)
+                        name = rs.getString("player_uuid");
+                    list.add(new TopVoter(name, rs.getInt("total")));
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Overall rank of a player: 1 plus the players with a higher total (ties share a rank). With
+     * V12 the count is a range scan of the totals index above the player's total.
+     *
+     * @return the rank, or 0 if the player has no votes
+     */
+    public int getRank(Connection conn, String playerUuid) throws SQLException {
+        String sql = totals
+                ? "SELECT 1 + (SELECT COUNT(*) FROM player_vote_totals o WHERE o.platform = '' AND o.votes > t.votes) AS rank " +
+                  "FROM player_vote_totals t WHERE t.player_uuid = ? AND t.platform = '' AND t.votes > 0"
+                : "WITH totals AS (SELECT player_uuid, SUM(votes) AS votes FROM player_votes GROUP BY player_uuid) " +
+                  "SELECT 1 + (SELECT COUNT(*) FROM totals o WHERE o.votes > t.votes) AS rank " +
+                  "FROM totals t WHERE t.player_uuid = ? AND t.votes > 0";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, playerUuid);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getInt("rank");
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Rank of a player in the current calendar window (same ranking as {@link #getRank}).
+     *
+     * @param window date_trunc field of the window: "week" or "month"
+     * @return the rank, or 0 if the player has no votes in the window
+     */
+    public int getWindowRank(Connection conn, String playerUuid, String window) throws SQLException {
+        String sql = windows
+                ? "SELECT 1 + (SELECT COUNT(*) FROM player_vote_windows o WHERE o.window_kind = t.window_kind " +
+                  "AND o.window_start = t.window_start AND o.votes > t.votes) AS rank " +
+                  "FROM player_vote_windows t " +
+                  "WHERE t.window_kind = ? AND t.window_start = date_trunc(?, LOCALTIMESTAMP)::date AND t.player_uuid = ? AND t.votes > 0"
+                : "WITH totals AS (SELECT player_uuid, SUM(votes) AS votes FROM player_votes " +
+                  "WHERE created_at >= date_trunc(?, LOCALTIMESTAMP) GROUP BY player_uuid) " +
+                  "SELECT 1 + (SELECT COUNT(*) FROM totals o WHERE o.votes > t.votes) AS rank " +
+                  "FROM totals t WHERE t.player_uuid = ? AND t.votes > 0";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int i = 1;
+            stmt.setString(i++, window);
+            if (windows) stmt.setString(i++, window);
+            stmt.setString(i, playerUuid);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getInt("rank");
+                }
+            }
+        }
+        return 0;
+    }
+
+    /** Create the monthly partitions of player_votes up to {@code monthsAhead} months ahead (V14). */
+    public void ensurePartitions(Connection conn, int monthsAhead) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT " + PARTITION_FUNCTION + "(?)")) {
+            stmt.setInt(1, monthsAhead);
+            stmt.execute();
+        }
+    }
+
+    public record Vote(String playerUuid, String platform, int count) {
+    }
+
     public static class TopVoter {
         public final String name;
         public final int votes;
@@ -1,7 +1,7 @@
 package org.hysync.database.tools;
 
 import org.hysync.database.api.InventorySyncService;
-import org.hysync.database.config.DatabaseConfig;
+import org.hysync.database.config.HysyncDataConfig;
 import org.hysync.database.config.PluginConfigLoader;
 import org.hysync.database.core.DatabaseManager;
 import org.hysync.database.core.InventorySyncServiceImpl;
@@ -29,15 +29,16 @@ public final class MigratePlayerFilesToDb {
 
         Path configBase = Paths.get(System.getProperty("user.dir", "."));
         PluginConfigLoader configLoader = new PluginConfigLoader(configBase);
-        DatabaseConfig dbConfig = configLoader.load();
-        if (dbConfig == null) {
+        HysyncDataConfig config = configLoader.loadConfig();
+        if (config == null) {
             System.err.println("Failed to load config from " + configLoader.getConfigPath());
             System.exit(1);
         }
 
         System.out.println("Connecting to database...");
-        DatabaseManager dbManager = new DatabaseManager(dbConfig);
-        InventorySyncService service = new InventorySyncServiceImpl(dbManager);
+        DatabaseManager dbManager = new DatabaseManager(config.toDatabaseConfig());
+        InventorySyncService service = new InventorySyncServiceImpl(dbManager, config.getInventory().isCompressed(),
+            config.getSessions().getLeaseSeconds());
         try {
             PlayerFileMigrationRunner.Result result = PlayerFileMigrationRunner.run(playersDir, service);
             if (result.message != null) {
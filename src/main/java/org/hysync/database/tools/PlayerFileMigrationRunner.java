@@ -2,6 +2,7 @@ package org.hysync.database.tools;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
+import org.hysync.database.api.InventorySnapshot;
 import org.hysync.database.api.InventorySyncService;
 
 import java.io.IOException;
@@ -23,6 +24,8 @@ public final class PlayerFileMigrationRunner {
     private static final Pattern UUID_FILE = Pattern.compile(
         "[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}\\.json");
     private static final Gson GSON = new Gson();
+    /** Players per {@link InventorySyncService#setInventories} transaction. */
+    private static final int BATCH_SIZE = 200;
 
     public static final class Result {
         public final int ok;
@@ -59,6 +62,7 @@ public final class PlayerFileMigrationRunner {
             return new Result(0, 0, 0, "Failed to list directory: " + e.getMessage());
         }
         int ok = 0, skip = 0, err = 0;
+        List<InventorySnapshot> batch = new ArrayList<>(BATCH_SIZE);
         for (Path file : toProcess) {
             String playerUuid = resolveUuid(playersDir, file);
             if (playerUuid == null) continue;
@@ -79,22 +83,42 @@ public final class PlayerFileMigrationRunner {
                 JsonObject inventory = player.getAsJsonObject("Inventory");
                 int version = inventory.has("Version") ? inventory.get("Version").getAsInt() : 4;
                 String inventoryJson = GSON.toJson(inventory);
-                if (!service.setInventory(playerUuid, displayName, inventoryJson, version)) {
-                    err++;
-                    continue;
-                }
-                if (player.has("HotbarManager")) {
-                    String hotbarJson = GSON.toJson(player.getAsJsonObject("HotbarManager"));
-                    service.setHotbarManager(playerUuid, hotbarJson);
-                }
-                ok++;
+                String hotbarJson = player.has("HotbarManager")
+                    ? GSON.toJson(player.getAsJsonObject("HotbarManager"))
+                    : null;
+                batch.add(new InventorySnapshot(playerUuid, displayName, inventoryJson, version, hotbarJson));
             } catch (Exception e) {
                 err++;
             }
+            if (batch.size() >= BATCH_SIZE) {
+                int saved = saveBatch(service, batch);
+                ok += saved;
+                err += batch.size() - saved;
+                batch.clear();
+            }
         }
+        int saved = saveBatch(service, batch);
+        ok += saved;
+        err += batch.size() - saved;
         return new Result(ok, skip, err, null);
     }
 
+    /**
+     * Save a batch in one transaction; if it fails, fall back to per-player saves so one bad file
+     * only costs its own row.
+     *
+     * @return number of players saved
+     */
+    private static int saveBatch(InventorySyncService service, List<InventorySnapshot> batch) {
+        if (batch.isEmpty()) return 0;
+        if (service.setInventories(batch)) return batch.size();
+        int saved = 0;
+        for (InventorySnapshot snapshot : batch) {
+            if (service.setInventories(List.of(snapshot))) saved++;
+        }
+        return saved;
+    }
+
     private static List<Path> collectPlayerFiles(Path playersDir) throws IOException {
         List<Path> out = new ArrayList<>();
         try (var stream = Files.list(playersDir)) {
@@ -0,0 +1,103 @@
+package org.hysync.database.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Small thread-safe LRU cache with a fixed maximum number of entries and hit/miss/eviction counters.
+ * <p>
+ * Read-through callers should take the key's {@link #stamp} before loading from the database and
+ * store the result with {@link #putIfUnchanged}: if that key was invalidated in between, the
+ * (possibly stale) value is dropped instead of cached. Stamps are kept per key (hashed onto a fixed
+ * number of stripes), so a steady stream of invalidations for other keys does not keep the cache cold.
+ */
+public class BoundedCache<K, V> {
+
+    /** Invalidation stamps; a power of two. Keys sharing a stripe only cost each other a store. */
+    private static final int STAMP_STRIPES = 1024;
+
+    private final int maximumSize;
+    private final LinkedHashMap<K, V> entries;
+    private final long[] stamps = new long[STAMP_STRIPES];
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public BoundedCache(int maximumSize) {
+        this.maximumSize = Math.max(1, maximumSize);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                if (size() > BoundedCache.this.maximumSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /** @return cached value, or null on a miss */
+    public synchronized V get(K key) {
+        V value = entries.get(key);
+        if (value != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return value;
+    }
+
+    public synchronized void put(K key, V value) {
+        entries.put(key, value);
+    }
+
+    /** Current invalidation stamp of {@code key}; pass it to {@link #putIfUnchanged} after loading. */
+    public synchronized long stamp(K key) {
+        return stamps[stripe(key)];
+    }
+
+    /**
+     * Store a loaded value unless the key was invalidated since {@code loadStamp} was taken.
+     *
+     * @return true if stored
+     */
+    public synchronized boolean putIfUnchanged(K key, V value, long loadStamp) {
+        if (stamps[stripe(key)] != loadStamp) return false;
+        entries.put(key, value);
+        return true;
+    }
+
+    public synchronized void invalidate(K key) {
+        stamps[stripe(key)]++;
+        entries.remove(key);
+    }
+
+    public synchronized void invalidateAll() {
+        for (int i = 0; i < stamps.length; i++) {
+            stamps[i]++;
+        }
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, evictions, entries.size());
+    }
+
+    private static int stripe(Object key) {
+        int h = key.hashCode() * 0x9E3779B1;
+        return (h ^ (h >>> 16)) & (STAMP_STRIPES - 1);
+    }
+
+    /** Snapshot of cache counters since creation. */
+    public record Stats(long hits, long misses, long evictions, int size) {
+        public double hitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0.0 : (double) hits / requests;
+        }
+    }
+}
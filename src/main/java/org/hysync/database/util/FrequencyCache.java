@@ -0,0 +1,323 @@
+package org.hysync.database.util;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * Thread-safe cache bounded by total weight, with W-TinyLFU style eviction and optional
+ * expire-after-access.
+ * <p>
+ * New entries land in a small LRU admission window (1% of the weight). Entries leaving the window
+ * compete with the least recently used entry of the main region: whichever key has been requested
+ * less often (estimated by a count-min sketch that ages over time) is evicted. One-off lookups
+ * therefore cannot flush out entries that are used all the time, while recency still wins among
+ * equally popular keys.
+ * <p>
+ * Read-through callers should take the key's {@link #stamp} before loading and store with
+ * {@link #putIfUnchanged} so a value loaded before that key was invalidated is dropped. Stamps are
+ * kept per key (hashed onto a fixed number of stripes), so invalidating one key does not fail the
+ * loads of others. A value changed in place must be passed to {@link #reweigh} afterwards.
+ */
+public class FrequencyCache<K, V> {
+
+    /** Invalidation stamps; a power of two. Keys sharing a stripe only cost each other a store. */
+    private static final int STAMP_STRIPES = 1024;
+
+    private final long maximumWeight;
+    private final long windowMaximumWeight;
+    private final long expireAfterAccessNanos;
+    private final ToIntFunction<V> weigher;
+    private final LinkedHashMap<K, Node<V>> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, Node<V>> main = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+    private long windowWeight;
+    private long mainWeight;
+    private final long[] stamps = new long[STAMP_STRIPES];
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param maximumWeight          upper bound for the summed weight of all entries
+     * @param expireAfterAccessNanos entries not read or written for this long are dropped; 0 = never
+     * @param weigher                weight of one value (at least 1 is used)
+     */
+    public FrequencyCache(long maximumWeight, long expireAfterAccessNanos, ToIntFunction<V> weigher) {
+        this.maximumWeight = Math.max(1, maximumWeight);
+        this.windowMaximumWeight = Math.max(1, this.maximumWeight / 100);
+        this.expireAfterAccessNanos = Math.max(0, expireAfterAccessNanos);
+        this.weigher = weigher;
+        this.sketch = new FrequencySketch(this.maximumWeight);
+    }
+
+    /** @return cached value, or null on a miss (or if the entry expired) */
+    public synchronized V get(K key) {
+        sketch.increment(key.hashCode());
+        Node<V> node = window.get(key);
+        if (node == null) {
+            node = main.get(key);
+        }
+        long now = System.nanoTime();
+        if (node != null && isExpired(node, now)) {
+            remove(key);
+            evictions++;
+            node = null;
+        }
+        if (node == null) {
+            misses++;
+            return null;
+        }
+        node.accessed = now;
+        hits++;
+        return node.value;
+    }
+
+    /** Like {@link #get} but without touching counters, frequency or recency. */
+    public synchronized V peek(K key) {
+        Node<V> node = window.get(key);
+        if (node == null) {
+            node = main.get(key);
+        }
+        return node != null && !isExpired(node, System.nanoTime()) ? node.value : null;
+    }
+
+    /**
+     * Insert or replace a value. Putting the same (mutable) value again after changing it
+     * recomputes its weight in place.
+     */
+    public synchronized void put(K key, V value) {
+        long now = System.nanoTime();
+        int weight = Math.max(1, weigher.applyAsInt(value));
+        Node<V> existing = window.get(key);
+        if (existing != null) {
+            windowWeight += weight - existing.weight;
+        } else if ((existing = main.get(key)) != null) {
+            mainWeight += weight - existing.weight;
+        }
+        if (existing != null) {
+            existing.value = value;
+            existing.weight = weight;
+            existing.accessed = now;
+        } else {
+            window.put(key, new Node<>(value, weight, now));
+            windowWeight += weight;
+        }
+        expire(now);
+        evict();
+    }
+
+    /** Current invalidation stamp of {@code key}; pass it to {@link #putIfUnchanged} after loading. */
+    public synchronized long stamp(K key) {
+        return stamps[stripe(key)];
+    }
+
+    /**
+     * Store a loaded value unless the key was invalidated since {@code loadStamp} was taken.
+     *
+     * @return true if stored
+     */
+    public synchronized boolean putIfUnchanged(K key, V value, long loadStamp) {
+        if (stamps[stripe(key)] != loadStamp) return false;
+        put(key, value);
+        return true;
+    }
+
+    /**
+     * Store a loaded value unless the key is already present or was invalidated since
+     * {@code loadStamp} was taken.
+     *
+     * @return true if stored
+     */
+    public synchronized boolean putIfAbsent(K key, V value, long loadStamp) {
+        if (stamps[stripe(key)] != loadStamp || window.containsKey(key) || main.containsKey(key)) return false;
+        put(key, value);
+        return true;
+    }
+
+    /**
+     * Recompute the weight of a value that was changed in place, if it is still the one cached
+     * under {@code key}. Unlike {@link #put}, a value that was evicted or invalidated meanwhile is
+     * not brought back.
+     */
+    public synchronized void reweigh(K key, V value) {
+        Node<V> node = window.get(key);
+        boolean inWindow = node != null;
+        if (!inWindow) {
+            node = main.get(key);
+        }
+        if (node == null || node.value != value) return;
+        int weight = Math.max(1, weigher.applyAsInt(value));
+        if (inWindow) {
+            windowWeight += weight - node.weight;
+        } else {
+            mainWeight += weight - node.weight;
+        }
+        node.weight = weight;
+        evict();
+    }
+
+    public synchronized void invalidate(K key) {
+        stamps[stripe(key)]++;
+        remove(key);
+    }
+
+    public synchronized void invalidateAll() {
+        for (int i = 0; i < stamps.length; i++) {
+            stamps[i]++;
+        }
+        window.clear();
+        main.clear();
+        windowWeight = 0;
+        mainWeight = 0;
+    }
+
+    public synchronized int size() {
+        return window.size() + main.size();
+    }
+
+    public synchronized long weightedSize() {
+        return windowWeight + mainWeight;
+    }
+
+    public synchronized BoundedCache.Stats stats() {
+        return new BoundedCache.Stats(hits, misses, evictions, window.size() + main.size());
+    }
+
+    private void remove(K key) {
+        Node<V> node = window.remove(key);
+        if (node != null) {
+            windowWeight -= node.weight;
+            return;
+        }
+        node = main.remove(key);
+        if (node != null) {
+            mainWeight -= node.weight;
+        }
+    }
+
+    private static int stripe(Object key) {
+        int h = key.hashCode() * 0x9E3779B1;
+        return (h ^ (h >>> 16)) & (STAMP_STRIPES - 1);
+    }
+
+    private boolean isExpired(Node<V> node, long now) {
+        return expireAfterAccessNanos > 0 && now - node.accessed > expireAfterAccessNanos;
+    }
+
+    /** Both regions are in access order, so expired entries are at the head. */
+    private void expire(long now) {
+        if (expireAfterAccessNanos == 0) return;
+        windowWeight -= expireHead(window, now);
+        mainWeight -= expireHead(main, now);
+    }
+
+    private long expireHead(LinkedHashMap<K, Node<V>> region, long now) {
+        long removed = 0;
+        Iterator<Node<V>> it = region.values().iterator();
+        while (it.hasNext()) {
+            Node<V> node = it.next();
+            if (!isExpired(node, now)) break;
+            removed += node.weight;
+            it.remove();
+            evictions++;
+        }
+        return removed;
+    }
+
+    private void evict() {
+        // Window overflow moves its least recent entries to main as admission candidates, oldest first.
+        ArrayDeque<K> candidates = new ArrayDeque<>();
+        while (windowWeight > windowMaximumWeight && window.size() > 1) {
+            Map.Entry<K, Node<V>> eldest = window.entrySet().iterator().next();
+            window.remove(eldest.getKey());
+            windowWeight -= eldest.getValue().weight;
+            main.put(eldest.getKey(), eldest.getValue());
+            mainWeight += eldest.getValue().weight;
+            candidates.add(eldest.getKey());
+        }
+        // Each candidate competes once with the LRU entry of main; the less popular one is evicted.
+        // Candidates were appended to main, so the LRU entry is only a candidate if no other is left.
+        while (windowWeight + mainWeight > maximumWeight && !main.isEmpty()) {
+            K victim = main.keySet().iterator().next();
+            K candidate = candidates.pollFirst();
+            if (candidate != null && !victim.equals(candidate)
+                && sketch.frequency(candidate.hashCode()) <= sketch.frequency(victim.hashCode())) {
+                // The newcomer is not more popular than the LRU entry: drop the newcomer instead.
+                victim = candidate;
+            }
+            mainWeight -= main.remove(victim).weight;
+            evictions++;
+        }
+        while (windowWeight + mainWeight > maximumWeight && window.size() > 1) {
+            K eldest = window.keySet().iterator().next();
+            windowWeight -= window.remove(eldest).weight;
+            evictions++;
+        }
+    }
+
+    private static final class Node<V> {
+        V value;
+        int weight;
+        long accessed;
+
+        Node(V value, int weight, long accessed) {
+            this.value = value;
+            this.weight = weight;
+            this.accessed = accessed;
+        }
+    }
+
+    /**
+     * Count-min sketch of 4-bit-style counters (capped at 15) with periodic halving, so the
+     * frequency estimate favours recent popularity.
+     */
+    private static final class FrequencySketch {
+        private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+        private static final int MAX_COUNT = 15;
+
+        private final byte[] counters;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(long expectedEntries) {
+            int size = Integer.highestOneBit((int) Math.min(1 << 22, Math.max(16, expectedEntries * 4)) - 1) << 1;
+            this.counters = new byte[size];
+            this.mask = size - 1;
+            this.sampleSize = (int) Math.min(Integer.MAX_VALUE, 10L * size);
+        }
+
+        void increment(int hash) {
+            boolean added = false;
+            for (int seed : SEEDS) {
+                int i = index(hash, seed);
+                if (counters[i] < MAX_COUNT) {
+                    counters[i]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                for (int i = 0; i < counters.length; i++) {
+                    counters[i] >>>= 1;
+                }
+                additions >>>= 1;
+            }
+        }
+
+        int frequency(int hash) {
+            int min = MAX_COUNT;
+            for (int seed : SEEDS) {
+                min = Math.min(min, counters[index(hash, seed)]);
+            }
+            return min;
+        }
+
+        private int index(int hash, int seed) {
+            int h = (hash ^ seed) * 0x9E3779B1;
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.hysync.database.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compact binary encoding for stored JSON documents (inventory, hotbar manager): a one-byte
+ * format marker followed by the Deflate-compressed UTF-8 JSON. The marker lets newer formats
+ * be added later while old rows stay readable.
+ */
+public final class JsonCompression {
+
+    /** Format marker for raw Deflate of UTF-8 JSON. */
+    private static final byte FORMAT_DEFLATE = 1;
+
+    private JsonCompression() {
+    }
+
+    public static byte[] compress(String json) {
+        byte[] input = json.getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, input.length / 4));
+            out.write(FORMAT_DEFLATE);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the data is not in a known format or is corrupt
+     */
+    public static String decompress(byte[] data) {
+        if (data.length == 0 || data[0] != FORMAT_DEFLATE) {
+            throw new IllegalArgumentException("Unknown compressed JSON format");
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data, 1, data.length - 1);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Truncated compressed JSON");
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toString(StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupt compressed JSON", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+-- Run after V3. Slot-level stash updates: setSlot / clearSlot / swapSlots / applySlotDelta change
+-- player_stashes.items_json in place, so a client sends one item instead of the whole stash.
+-- items_json is either an array (slot = index, null = empty) or an object keyed by slot number;
+-- both are kept in their format. The plugin applies the same change to its cached copy.
+
+-- Item in one slot, or NULL if the slot is empty or out of range.
+CREATE OR REPLACE FUNCTION hysync_stash_slot(items jsonb, slot int) RETURNS jsonb AS $$
+    SELECT CASE jsonb_typeof(items)
+        WHEN 'array' THEN items -> slot
+        WHEN 'object' THEN items -> slot::text
+    END;
+$$ LANGUAGE sql IMMUTABLE;
+
+-- Apply {"<slot>": item | null, ...}; null (or a missing value) empties the slot.
+CREATE OR REPLACE FUNCTION hysync_apply_stash_slots(items jsonb, changes jsonb) RETURNS jsonb AS $$
+DECLARE
+    change record;
+    slot int;
+BEGIN
+    IF items IS NULL OR jsonb_typeof(items) NOT IN ('array', 'object') THEN
+        items := '[]'::jsonb;
+    END IF;
+    FOR change IN SELECT key, value FROM jsonb_each(changes) LOOP
+        slot := change.key::int;
+        IF slot < 0 THEN
+            RAISE EXCEPTION 'Invalid stash slot %', slot;
+        END IF;
+        IF jsonb_typeof(items) = 'object' THEN
+            IF change.value IS NULL OR change.value = 'null'::jsonb THEN
+                items := items - slot::text;
+            ELSE
+                items := jsonb_set(items, ARRAY[slot::text], change.value);
+            END IF;
+        ELSIF slot < jsonb_array_length(items) THEN
+            items := jsonb_set(items, ARRAY[slot::text], COALESCE(change.value, 'null'::jsonb));
+        ELSIF change.value IS NOT NULL AND change.value <> 'null'::jsonb THEN
+            -- jsonb_set appends past the end, so pad with empty slots first.
+            items := items
+                || COALESCE((SELECT jsonb_agg('null'::jsonb) FROM generate_series(jsonb_array_length(items), slot - 1)), '[]'::jsonb)
+                || jsonb_build_array(change.value);
+        END IF;
+    END LOOP;
+    RETURN items;
+END;
+$$ LANGUAGE plpgsql IMMUTABLE;
@@ -0,0 +1,13 @@
+-- Run after V1, V3 and V5. Indexes for "who holds item X" (ItemSearchService.findHolders).
+-- Each index covers only the item ids of a payload (GIN, jsonb_path_ops), so lookups are an index
+-- probe instead of a scan over every inventory and stash. Queries must use the exact same
+-- expressions (see ItemSearchServiceImpl). Compressed inventories (inventory_blob) are not indexed.
+-- On large live tables, run these as CREATE INDEX CONCURRENTLY outside a transaction instead.
+
+-- Inventory: Id of every item in every container's Items (Storage, Armor, HotBar, Utility, Tool, ...).
+CREATE INDEX IF NOT EXISTS idx_player_inventory_item_ids ON player_inventory
+    USING GIN ((jsonb_path_query_array(inventory_json, 'lax $.*.Items.*.Id')) jsonb_path_ops);
+
+-- Stashes: Id of every object at any depth of items_json (array or slot-keyed object).
+CREATE INDEX IF NOT EXISTS idx_player_stashes_item_ids ON player_stashes
+    USING GIN ((jsonb_path_query_array(items_json, 'strict $.** ? (exists (@.Id)).Id')) jsonb_path_ops);
@@ -0,0 +1,53 @@
+-- Run after V4. Running vote totals so total lookups, milestone checks and leaderboards do not
+-- SUM the whole vote history. One row per (player, platform) plus one per player with
+-- platform = '' for the total over all platforms. A statement trigger on player_votes keeps them
+-- (one upsert per player and platform per INSERT, also for batched inserts), so votes from every
+-- server are counted, including servers that started before this migration or run older builds.
+-- Votes stored with platform '' only count towards the overall total.
+
+BEGIN;
+
+-- No votes may be inserted between the trigger and the backfill, or the backfill would overwrite them.
+LOCK TABLE player_votes IN SHARE ROW EXCLUSIVE MODE;
+
+CREATE TABLE IF NOT EXISTS player_vote_totals (
+    player_uuid VARCHAR(36) NOT NULL,
+    platform    VARCHAR(64) NOT NULL,
+    votes       INTEGER NOT NULL DEFAULT 0,
+    updated_at  TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+    PRIMARY KEY (player_uuid, platform)
+);
+
+-- Leaderboards: highest totals of one platform ('' = overall) first.
+CREATE INDEX IF NOT EXISTS idx_player_vote_totals_rank ON player_vote_totals (platform, votes DESC);
+
+CREATE OR REPLACE FUNCTION hysync_add_vote_totals() RETURNS trigger AS $$
+BEGIN
+    -- Sorted so concurrent inserts lock totals rows in the same order.
+    INSERT INTO player_vote_totals (player_uuid, platform, votes, updated_at)
+    SELECT player_uuid, platform, SUM(votes), NOW() FROM new_votes WHERE platform <> '' GROUP BY player_uuid, platform
+    UNION ALL
+    SELECT player_uuid, '', SUM(votes), NOW() FROM new_votes GROUP BY player_uuid
+    ORDER BY 1, 2
+    ON CONFLICT (player_uuid, platform)
+    DO UPDATE SET votes = player_vote_totals.votes + EXCLUDED.votes, updated_at = NOW();
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_player_votes_totals ON player_votes;
+CREATE TRIGGER trg_player_votes_totals
+    AFTER INSERT ON player_votes
+    REFERENCING NEW TABLE AS new_votes
+    FOR EACH STATEMENT EXECUTE FUNCTION hysync_add_vote_totals();
+
+-- Backfill from the history (idempotent: recomputes every total).
+INSERT INTO player_vote_totals (player_uuid, platform, votes)
+SELECT player_uuid, platform, SUM(votes) FROM player_votes WHERE platform <> '' GROUP BY player_uuid, platform
+UNION ALL
+SELECT player_uuid, '', SUM(votes) FROM player_votes GROUP BY player_uuid
+ON CONFLICT (player_uuid, platform) DO UPDATE SET votes = EXCLUDED.votes, updated_at = NOW();
+
+COMMENT ON TABLE player_vote_totals IS 'Running SUM(player_votes.votes) per player and platform (trg_player_votes_totals); platform '''' is the overall total';
+
+COMMIT;
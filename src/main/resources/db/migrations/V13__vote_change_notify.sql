@@ -0,0 +1,21 @@
+-- Run after V12. Vote leaderboard: every change of an overall vote total (player_vote_totals row
+-- with platform = '') sends NOTIFY hysync_votes with {"uuid": ..., "votes": <new total>, "name": ...}
+-- as payload. Servers keep the top voters in memory (loaded once, then updated from these
+-- notifications) so leaderboard renders need no query. The name is looked up here, once per vote,
+-- so receivers never have to.
+
+CREATE OR REPLACE FUNCTION hysync_notify_vote_total() RETURNS trigger AS $$
+BEGIN
+    PERFORM pg_notify('hysync_votes', json_build_object(
+        'uuid', NEW.player_uuid,
+        'votes', NEW.votes,
+        'name', (SELECT p.display_name FROM players p WHERE p.uuid = NEW.player_uuid))::text);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_player_vote_totals_notify ON player_vote_totals;
+CREATE TRIGGER trg_player_vote_totals_notify
+    AFTER INSERT OR UPDATE OF votes ON player_vote_totals
+    FOR EACH ROW WHEN (NEW.platform = '')
+    EXECUTE FUNCTION hysync_notify_vote_total();
@@ -0,0 +1,153 @@
+-- Run after V12. Weekly and monthly vote leaderboards.
+-- player_votes becomes range-partitioned by month on created_at (existing rows are copied into
+-- one partition per month), so old months can be detached or dropped as whole tables instead of
+-- DELETEd row by row. player_vote_windows keeps a running total per player and week/month, so
+-- windowed leaderboards read an index instead of scanning history.
+-- The rollups are kept by a statement trigger (one upsert per player and window per INSERT, also
+-- for batched inserts), so they count votes from servers that started before this migration too.
+-- Apply it while vote traffic is low: the history copy locks player_votes.
+
+-- Monthly partition for the month containing `month`, created and attached if missing. Rows of that
+-- month that landed in the default partition are moved into it first (ATTACH fails otherwise).
+-- An existing table of that name (e.g. a detached archive) is left alone.
+CREATE OR REPLACE FUNCTION hysync_vote_partition(month DATE) RETURNS TEXT AS $$
+DECLARE
+    start_at DATE := date_trunc('month', month)::date;
+    end_at DATE := (date_trunc('month', month) + INTERVAL '1 month')::date;
+    part TEXT := 'player_votes_' || to_char(month, 'YYYYMM');
+BEGIN
+    -- Servers call this concurrently at startup.
+    PERFORM pg_advisory_xact_lock(hashtext('hysync_vote_partition'));
+    IF to_regclass(part) IS NOT NULL THEN
+        RETURN part;
+    END IF;
+    EXECUTE format('CREATE TABLE %I (LIKE player_votes INCLUDING DEFAULTS INCLUDING CONSTRAINTS)', part);
+    EXECUTE format('WITH moved AS (DELETE FROM player_votes_default WHERE created_at >= $1 AND created_at < $2 RETURNING *) '
+        'INSERT INTO %I SELECT * FROM moved', part) USING start_at, end_at;
+    EXECUTE format('ALTER TABLE player_votes ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)', part, start_at, end_at);
+    RETURN part;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Partitions for the current month and the next `months_ahead`. The plugin calls this at startup
+-- and daily, so inserts never depend on the default partition.
+CREATE OR REPLACE FUNCTION hysync_ensure_vote_partitions(months_ahead INTEGER DEFAULT 2) RETURNS VOID AS $$
+BEGIN
+    FOR i IN 0..months_ahead LOOP
+        PERFORM hysync_vote_partition((date_trunc('month', LOCALTIMESTAMP) + make_interval(months => i))::date);
+    END LOOP;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Detach a past month's partition: a catalog change, no row is read or moved. The table stays as
+-- player_votes_YYYYMM for archiving (pg_dump -t) or DROP TABLE. Totals and rollups are kept.
+CREATE OR REPLACE FUNCTION hysync_detach_vote_partition(month DATE) RETURNS TEXT AS $$
+DECLARE
+    part TEXT := 'player_votes_' || to_char(month, 'YYYYMM');
+BEGIN
+    IF date_trunc('month', month) >= date_trunc('month', LOCALTIMESTAMP) THEN
+        RAISE EXCEPTION 'Only past months can be detached (got %)', month;
+    END IF;
+    EXECUTE format('ALTER TABLE player_votes DETACH PARTITION %I', part);
+    RETURN part;
+END;
+$$ LANGUAGE plpgsql;
+
+BEGIN;
+
+-- No votes may be inserted until the new triggers exist and the rollup backfill is done.
+LOCK TABLE player_votes IN SHARE ROW EXCLUSIVE MODE;
+
+DO $$
+BEGIN
+    IF (SELECT relkind FROM pg_class WHERE oid = 'player_votes'::regclass) = 'p' THEN
+        RETURN;
+    END IF;
+
+    -- Keep the id sequence (and so id values) for the partitioned table.
+    ALTER SEQUENCE player_votes_id_seq OWNED BY NONE;
+    ALTER TABLE player_votes RENAME TO player_votes_unpartitioned;
+    ALTER TABLE player_votes_unpartitioned DROP CONSTRAINT IF EXISTS player_votes_pkey;
+    DROP INDEX IF EXISTS idx_player_votes_uuid;
+    DROP INDEX IF EXISTS idx_player_votes_platform;
+
+    -- The partition key has to be part of the primary key.
+    CREATE TABLE player_votes (
+        id INTEGER NOT NULL DEFAULT nextval('player_votes_id_seq'),
+        player_uuid VARCHAR(36) NOT NULL,
+        platform VARCHAR(64) NOT NULL,
+        votes INTEGER NOT NULL DEFAULT 1,
+        created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+        PRIMARY KEY (id, created_at)
+    ) PARTITION BY RANGE (created_at);
+    ALTER SEQUENCE player_votes_id_seq OWNED BY player_votes.id;
+    CREATE INDEX idx_player_votes_uuid ON player_votes (player_uuid);
+    CREATE INDEX idx_player_votes_platform ON player_votes (platform);
+    -- Catches rows outside every monthly partition (e.g. votes without a timestamp, stored as 1970).
+    CREATE TABLE player_votes_default PARTITION OF player_votes DEFAULT;
+
+    PERFORM hysync_vote_partition(m::date)
+    FROM generate_series(
+        date_trunc('month', (SELECT MIN(created_at) FROM player_votes_unpartitioned)),
+        date_trunc('month', LOCALTIMESTAMP),
+        INTERVAL '1 month') AS m;
+
+    INSERT INTO player_votes (id, player_uuid, platform, votes, created_at)
+    SELECT id, player_uuid, platform, votes, COALESCE(created_at, TIMESTAMP '1970-01-01')
+    FROM player_votes_unpartitioned;
+
+    -- The V12 totals trigger went with the old table; added after the copy, which is already counted.
+    CREATE TRIGGER trg_player_votes_totals
+        AFTER INSERT ON player_votes
+        REFERENCING NEW TABLE AS new_votes
+        FOR EACH STATEMENT EXECUTE FUNCTION hysync_add_vote_totals();
+
+    DROP TABLE player_votes_unpartitioned;
+END;
+$$;
+
+SELECT hysync_ensure_vote_partitions(2);
+
+-- Running totals per player and calendar window. window_kind is the date_trunc field ('week'
+-- starts on Monday, 'month' on the 1st); window_start is that truncation of created_at.
+CREATE TABLE IF NOT EXISTS player_vote_windows (
+    window_kind  VARCHAR(8) NOT NULL,
+    window_start DATE NOT NULL,
+    player_uuid  VARCHAR(36) NOT NULL,
+    votes        INTEGER NOT NULL DEFAULT 0,
+    PRIMARY KEY (window_kind, window_start, player_uuid)
+);
+
+-- Windowed leaderboards: highest totals of one window first.
+CREATE INDEX IF NOT EXISTS idx_player_vote_windows_rank ON player_vote_windows (window_kind, window_start, votes DESC);
+
+-- Backfill from the history (idempotent: recomputes every window).
+INSERT INTO player_vote_windows (window_kind, window_start, player_uuid, votes)
+SELECT k.kind, date_trunc(k.kind, v.created_at)::date, v.player_uuid, SUM(v.votes)
+FROM player_votes v CROSS JOIN (VALUES ('week'), ('month')) AS k(kind)
+GROUP BY 1, 2, 3
+ON CONFLICT (window_kind, window_start, player_uuid) DO UPDATE SET votes = EXCLUDED.votes;
+
+CREATE OR REPLACE FUNCTION hysync_roll_up_votes() RETURNS trigger AS $$
+BEGIN
+    -- Sorted so concurrent batches lock rollup rows in the same order.
+    INSERT INTO player_vote_windows (window_kind, window_start, player_uuid, votes)
+    SELECT k.kind, date_trunc(k.kind, n.created_at)::date, n.player_uuid, SUM(n.votes)
+    FROM new_votes n CROSS JOIN (VALUES ('week'), ('month')) AS k(kind)
+    GROUP BY 1, 2, 3
+    ORDER BY 1, 2, 3
+    ON CONFLICT (window_kind, window_start, player_uuid)
+    DO UPDATE SET votes = player_vote_windows.votes + EXCLUDED.votes;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_player_votes_roll_up ON player_votes;
+CREATE TRIGGER trg_player_votes_roll_up
+    AFTER INSERT ON player_votes
+    REFERENCING NEW TABLE AS new_votes
+    FOR EACH STATEMENT EXECUTE FUNCTION hysync_roll_up_votes();
+
+COMMENT ON TABLE player_vote_windows IS 'Running SUM(player_votes.votes) per player and week/month (trg_player_votes_roll_up)';
+
+COMMIT;
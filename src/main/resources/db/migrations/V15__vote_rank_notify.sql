@@ -0,0 +1,17 @@
+-- Run after V13. Vote ranks: the hysync_votes payload also carries the previous overall total
+-- ("previous", null for a player's first vote) and the writing transaction ("xid"). Servers keep the
+-- number of players per total in memory, so "what's my rank" is answered without counting rows;
+-- the previous total says which count to move the player out of, and the xid lets a server skip
+-- changes its initial load already contained.
+
+CREATE OR REPLACE FUNCTION hysync_notify_vote_total() RETURNS trigger AS $$
+BEGIN
+    PERFORM pg_notify('hysync_votes', json_build_object(
+        'uuid', NEW.player_uuid,
+        'votes', NEW.votes,
+        'previous', CASE WHEN TG_OP = 'UPDATE' THEN OLD.votes END,
+        'xid', txid_current(),
+        'name', (SELECT p.display_name FROM players p WHERE p.uuid = NEW.player_uuid))::text);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
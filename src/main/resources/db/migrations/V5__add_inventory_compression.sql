@@ -0,0 +1,22 @@
+-- Run after V1. Optional compressed storage for inventory snapshots (inventory.storageFormat = "deflate").
+-- A row holds its payload either as JSONB (inventory_json) or as a compressed blob (inventory_blob), never both;
+-- the plugin reads either format, so the setting can be switched at any time and rows convert on their next save.
+
+ALTER TABLE player_inventory ADD COLUMN IF NOT EXISTS inventory_blob BYTEA;
+ALTER TABLE player_inventory ADD COLUMN IF NOT EXISTS hotbar_manager_blob BYTEA;
+ALTER TABLE player_inventory ALTER COLUMN inventory_json DROP NOT NULL;
+
+-- Blobs are already compressed: store out of line without a second (pglz) compression pass.
+ALTER TABLE player_inventory ALTER COLUMN inventory_blob SET STORAGE EXTERNAL;
+ALTER TABLE player_inventory ALTER COLUMN hotbar_manager_blob SET STORAGE EXTERNAL;
+
+DO $$
+BEGIN
+    ALTER TABLE player_inventory ADD CONSTRAINT player_inventory_payload_present
+        CHECK (inventory_json IS NOT NULL OR inventory_blob IS NOT NULL);
+EXCEPTION
+    WHEN duplicate_object THEN NULL;
+END $$;
+
+COMMENT ON COLUMN player_inventory.inventory_blob IS 'Compressed Inventory JSON (1-byte format marker + Deflate); used instead of inventory_json when set';
+COMMENT ON COLUMN player_inventory.hotbar_manager_blob IS 'Compressed HotbarManager JSON; used instead of hotbar_manager_json when set';
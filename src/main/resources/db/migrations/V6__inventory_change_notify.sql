@@ -0,0 +1,35 @@
+-- Run after V1. Cross-server cache invalidation: every change to a player's row in players or
+-- player_inventory sends NOTIFY hysync_inventory with the player UUID as payload. Servers that cache
+-- inventories LISTEN on this channel and evict the entry. Notifications are delivered on commit.
+
+CREATE OR REPLACE FUNCTION hysync_notify_inventory_change() RETURNS trigger AS $$
+BEGIN
+    IF TG_OP = 'DELETE' THEN
+        PERFORM pg_notify('hysync_inventory', OLD.player_uuid);
+    ELSE
+        PERFORM pg_notify('hysync_inventory', NEW.player_uuid);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION hysync_notify_player_change() RETURNS trigger AS $$
+BEGIN
+    IF TG_OP = 'DELETE' THEN
+        PERFORM pg_notify('hysync_inventory', OLD.uuid);
+    ELSE
+        PERFORM pg_notify('hysync_inventory', NEW.uuid);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_player_inventory_notify ON player_inventory;
+CREATE TRIGGER trg_player_inventory_notify
+    AFTER INSERT OR UPDATE OR DELETE ON player_inventory
+    FOR EACH ROW EXECUTE FUNCTION hysync_notify_inventory_change();
+
+DROP TRIGGER IF EXISTS trg_players_notify ON players;
+CREATE TRIGGER trg_players_notify
+    AFTER INSERT OR UPDATE OR DELETE ON players
+    FOR EACH ROW EXECUTE FUNCTION hysync_notify_player_change();
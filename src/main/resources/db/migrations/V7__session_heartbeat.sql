@@ -0,0 +1,7 @@
+-- Run after V2. Supports the batched session heartbeat and the stale-session reaper.
+-- Servers renew updated_at for all of their sessions in one statement (WHERE server_id = ? AND player_uuid = ANY(?));
+-- the reaper deletes sessions whose server stopped renewing them (updated_at older than sessions.leaseSeconds).
+
+CREATE INDEX IF NOT EXISTS idx_player_sessions_updated_at ON player_sessions(updated_at);
+
+COMMENT ON COLUMN player_sessions.updated_at IS 'Last claim or heartbeat by server_id; sessions older than the lease may be taken over or reaped';
@@ -0,0 +1,28 @@
+-- Run after V1 and V3. Optimistic concurrency for inventories and stashes.
+-- Every row carries a revision that the database bumps on each UPDATE, whichever server or code path
+-- writes it. Readers remember the revision; conditional writes (setInventory / saveStash with an
+-- expected revision) only apply if the row still has it, so a late save from the previous server
+-- cannot overwrite a newer one. Rows start at revision 1; 0 means "no row yet".
+
+ALTER TABLE player_inventory ADD COLUMN IF NOT EXISTS revision BIGINT NOT NULL DEFAULT 1;
+ALTER TABLE player_stashes ADD COLUMN IF NOT EXISTS revision BIGINT NOT NULL DEFAULT 1;
+
+CREATE OR REPLACE FUNCTION hysync_bump_revision() RETURNS trigger AS $$
+BEGIN
+    NEW.revision := OLD.revision + 1;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_player_inventory_revision ON player_inventory;
+CREATE TRIGGER trg_player_inventory_revision
+    BEFORE UPDATE ON player_inventory
+    FOR EACH ROW EXECUTE FUNCTION hysync_bump_revision();
+
+DROP TRIGGER IF EXISTS trg_player_stashes_revision ON player_stashes;
+CREATE TRIGGER trg_player_stashes_revision
+    BEFORE UPDATE ON player_stashes
+    FOR EACH ROW EXECUTE FUNCTION hysync_bump_revision();
+
+COMMENT ON COLUMN player_inventory.revision IS 'Incremented on every update (trg_player_inventory_revision); used for compare-and-set writes';
+COMMENT ON COLUMN player_stashes.revision IS 'Incremented on every update (trg_player_stashes_revision); used for compare-and-set writes';
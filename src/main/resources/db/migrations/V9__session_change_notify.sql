@@ -0,0 +1,23 @@
+-- Run after V2. Session directory: every claim, takeover and release in player_sessions sends
+-- NOTIFY hysync_sessions with {"op": "claim"|"release", "uuid": ..., "server": ...} as payload.
+-- Servers keep an in-memory copy of player_sessions (loaded once, then updated from these
+-- notifications) so routing lookups and online counts need no query. Heartbeats only touch
+-- updated_at and do not notify.
+
+CREATE OR REPLACE FUNCTION hysync_notify_session_change() RETURNS trigger AS $$
+BEGIN
+    IF TG_OP = 'DELETE' THEN
+        PERFORM pg_notify('hysync_sessions',
+            json_build_object('op', 'release', 'uuid', OLD.player_uuid, 'server', OLD.server_id)::text);
+    ELSIF TG_OP = 'INSERT' OR OLD.server_id IS DISTINCT FROM NEW.server_id THEN
+        PERFORM pg_notify('hysync_sessions',
+            json_build_object('op', 'claim', 'uuid', NEW.player_uuid, 'server', NEW.server_id)::text);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_player_sessions_notify ON player_sessions;
+CREATE TRIGGER trg_player_sessions_notify
+    AFTER INSERT OR DELETE OR UPDATE OF server_id ON player_sessions
+    FOR EACH ROW EXECUTE FUNCTION hysync_notify_session_change();
@@ -0,0 +1,107 @@
+package org.hysync.database.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VoteRanksTest {
+
+    /** VoteRanks' initial array size; totals from here on need a resize. */
+    private static final int INITIAL_SIZE = 1 << 10;
+
+    @Test
+    void countsPlayersStrictlyAbove() {
+        VoteRanks ranks = new VoteRanks();
+        ranks.add(5, 1);
+        ranks.add(10, 2);
+        assertEquals(3, ranks.countAbove(0));
+        assertEquals(3, ranks.countAbove(4));
+        assertEquals(2, ranks.countAbove(5));
+        assertEquals(2, ranks.countAbove(9));
+        assertEquals(0, ranks.countAbove(10));
+        assertEquals(0, ranks.countAbove(Integer.MAX_VALUE));
+    }
+
+    @Test
+    void nonPositiveTotalsAreIgnored() {
+        VoteRanks ranks = new VoteRanks();
+        assertTrue(ranks.add(0, 1));
+        assertTrue(ranks.add(-3, 1));
+        assertEquals(0, ranks.countAbove(0));
+    }
+
+    @Test
+    void removingMovesAPlayerBetweenTotals() {
+        VoteRanks ranks = new VoteRanks();
+        ranks.add(3, 1);
+        ranks.add(7, 1);
+        ranks.add(3, -1);
+        ranks.add(8, 1);
+        assertEquals(2, ranks.countAbove(3));
+        assertEquals(1, ranks.countAbove(7));
+    }
+
+    @Test
+    void countsSurviveAResize() {
+        VoteRanks ranks = new VoteRanks();
+        ranks.add(1, 1);
+        ranks.add(INITIAL_SIZE - 1, 1);
+        assertEquals(1, ranks.countAbove(INITIAL_SIZE - 2));
+        assertEquals(0, ranks.countAbove(INITIAL_SIZE));
+
+        assertTrue(ranks.add(INITIAL_SIZE, 1));
+        assertEquals(3, ranks.countAbove(0));
+        assertEquals(2, ranks.countAbove(1));
+        assertEquals(1, ranks.countAbove(INITIAL_SIZE - 1));
+        assertEquals(0, ranks.countAbove(INITIAL_SIZE));
+
+        assertTrue(ranks.add(5 * INITIAL_SIZE + 3, 1));
+        assertEquals(2, ranks.countAbove(INITIAL_SIZE - 1));
+        assertEquals(1, ranks.countAbove(5 * INITIAL_SIZE + 2));
+        assertEquals(0, ranks.countAbove(5 * INITIAL_SIZE + 3));
+    }
+
+    @Test
+    void tracksTotalsUpToMaxTotal() {
+        VoteRanks ranks = new VoteRanks();
+        ranks.add(2, 1);
+        assertTrue(ranks.add(VoteRanks.MAX_TOTAL, 1));
+        assertEquals(2, ranks.countAbove(1));
+        assertEquals(1, ranks.countAbove(VoteRanks.MAX_TOTAL - 1));
+        assertEquals(0, ranks.countAbove(VoteRanks.MAX_TOTAL));
+        assertEquals(0, ranks.countAbove(VoteRanks.MAX_TOTAL + 1));
+
+        assertFalse(ranks.add(VoteRanks.MAX_TOTAL + 1, 1));
+        assertEquals(2, ranks.countAbove(1), "a rejected total is not counted");
+    }
+
+    @Test
+    void matchesBruteForceAcrossResizes() {
+        Random random = new Random(42);
+        VoteRanks ranks = new VoteRanks();
+        int[] totals = new int[2_000];
+        for (int i = 0; i < totals.length; i++) {
+            // Mostly small totals, some far enough to force several resizes.
+            totals[i] = 1 + (random.nextInt(10) == 0 ? random.nextInt(VoteRanks.MAX_TOTAL) : random.nextInt(INITIAL_SIZE));
+            assertTrue(ranks.add(totals[i], 1));
+        }
+        for (int i = 0; i < 500; i++) {
+            int player = random.nextInt(totals.length);
+            ranks.add(totals[player], -1);
+            totals[player] = Math.min(VoteRanks.MAX_TOTAL, totals[player] + 1 + random.nextInt(50));
+            ranks.add(totals[player], 1);
+        }
+        for (int probe = 0; probe < 1_000; probe++) {
+            int votes = random.nextInt(VoteRanks.MAX_TOTAL + 2);
+            int expected = 0;
+            for (int total : totals) {
+                if (total > votes) expected++;
+            }
+            assertEquals(expected, ranks.countAbove(votes), "above " + votes);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package org.hysync.database.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BoundedCacheTest {
+
+    @Test
+    void invalidatingOtherKeysDoesNotFailALoad() {
+        BoundedCache<String, String> cache = new BoundedCache<>(100);
+        long stamp = cache.stamp("a");
+        // NOTIFY invalidations for other players arrive while "a" is loading.
+        for (int i = 0; i < 50; i++) {
+            cache.invalidate("other" + i);
+        }
+        assertTrue(cache.putIfUnchanged("a", "loaded", stamp));
+        assertEquals("loaded", cache.get("a"));
+    }
+
+    @Test
+    void invalidatingTheKeyDropsTheLoad() {
+        BoundedCache<String, String> cache = new BoundedCache<>(100);
+        long stamp = cache.stamp("a");
+        cache.invalidate("a");
+        assertFalse(cache.putIfUnchanged("a", "stale", stamp));
+        assertNull(cache.get("a"));
+
+        stamp = cache.stamp("a");
+        cache.invalidateAll();
+        assertFalse(cache.putIfUnchanged("a", "stale", stamp));
+    }
+
+    @Test
+    void leastRecentlyUsedEntryIsEvicted() {
+        BoundedCache<String, String> cache = new BoundedCache<>(2);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.get("a");
+        cache.put("c", "3");
+        assertNull(cache.get("b"));
+        assertEquals("1", cache.get("a"));
+        assertEquals(1, cache.stats().evictions());
+    }
+}
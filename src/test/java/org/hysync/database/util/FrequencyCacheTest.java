@@ -0,0 +1,177 @@
+package org.hysync.database.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FrequencyCacheTest {
+
+    /**
+     * 990 entries of weight 10 read three times each, leaving the 1% window to the caller. Weights
+     * keep the sketch (sized by weight) wide enough that one-off keys rarely look popular.
+     */
+    private static FrequencyCache<String, Integer> popularCache() {
+        FrequencyCache<String, Integer> cache = new FrequencyCache<>(10_000, 0, Integer::intValue);
+        for (int i = 0; i < 990; i++) {
+            cache.put("p" + i, 10);
+        }
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 990; i++) {
+                cache.get("p" + i);
+            }
+        }
+        return cache;
+    }
+
+    @Test
+    void oneOffKeysDoNotEvictPopularOnes() {
+        FrequencyCache<String, Integer> cache = popularCache();
+        for (int i = 0; i < 500; i++) {
+            cache.put("o" + i, 10);
+        }
+        for (int i = 0; i < 990; i++) {
+            assertNotNull(cache.peek("p" + i), "p" + i);
+        }
+        assertEquals(10_000, cache.weightedSize());
+    }
+
+    @Test
+    void everyEntryLeavingTheWindowCompetesForAdmission() {
+        FrequencyCache<String, Integer> cache = popularCache();
+        // Fill the window with ten one-off keys, then push them all out with one heavy entry.
+        for (int i = 0; i < 10; i++) {
+            cache.put("o" + i, 10);
+        }
+        cache.put("heavy", 100);
+        for (int i = 0; i < 990; i++) {
+            assertNotNull(cache.peek("p" + i), "p" + i);
+        }
+        for (int i = 0; i < 10; i++) {
+            assertNull(cache.peek("o" + i), "o" + i);
+        }
+        assertNotNull(cache.peek("heavy"));
+        assertEquals(10_000, cache.weightedSize());
+    }
+
+    @Test
+    void popularNewcomerIsAdmitted() {
+        FrequencyCache<String, Integer> cache = new FrequencyCache<>(100, 0, Integer::intValue);
+        for (int i = 0; i < 100; i++) {
+            cache.put("k" + i, 1);
+        }
+        for (int i = 0; i < 10; i++) {
+            cache.get("new");
+        }
+        cache.put("new", 1);
+        cache.put("next", 1);
+        assertNotNull(cache.peek("new"));
+        assertNull(cache.peek("k0"));
+        assertEquals(100, cache.weightedSize());
+    }
+
+    @Test
+    void entriesExpireAfterAccess() throws InterruptedException {
+        FrequencyCache<String, Integer> cache = new FrequencyCache<>(100, TimeUnit.MILLISECONDS.toNanos(20), Integer::intValue);
+        cache.put("a", 1);
+        assertEquals(Integer.valueOf(1), cache.get("a"));
+        Thread.sleep(50);
+        assertNull(cache.peek("a"));
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.weightedSize());
+        assertEquals(1, cache.stats().evictions());
+    }
+
+    @Test
+    void expiredEntriesAreDroppedOnWrite() throws InterruptedException {
+        FrequencyCache<String, Integer> cache = new FrequencyCache<>(100, TimeUnit.MILLISECONDS.toNanos(20), Integer::intValue);
+        cache.put("a", 3);
+        cache.put("b", 4);
+        Thread.sleep(50);
+        cache.put("c", 5);
+        assertEquals(1, cache.size());
+        assertEquals(5, cache.weightedSize());
+    }
+
+    @Test
+    void weightFollowsPutsAndRemovals() {
+        FrequencyCache<String, Integer> cache = new FrequencyCache<>(100, 0, Integer::intValue);
+        cache.put("a", 10);
+        cache.put("b", 20);
+        assertEquals(30, cache.weightedSize());
+        cache.put("a", 5);
+        assertEquals(25, cache.weightedSize());
+        cache.invalidate("b");
+        assertEquals(5, cache.weightedSize());
+        cache.put("c", 0);
+        assertEquals(6, cache.weightedSize(), "weight is at least 1");
+        cache.invalidateAll();
+        assertEquals(0, cache.weightedSize());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void reweighTracksInPlaceChanges() {
+        FrequencyCache<String, AtomicInteger> cache = new FrequencyCache<>(100, 0, AtomicInteger::get);
+        AtomicInteger value = new AtomicInteger(10);
+        cache.put("a", value);
+        value.set(30);
+        cache.reweigh("a", value);
+        assertEquals(30, cache.weightedSize());
+
+        cache.invalidate("a");
+        value.set(40);
+        cache.reweigh("a", value);
+        assertNull(cache.peek("a"), "reweigh must not bring back an invalidated entry");
+        assertEquals(0, cache.weightedSize());
+
+        cache.put("a", new AtomicInteger(5));
+        cache.reweigh("a", value);
+        assertEquals(5, cache.weightedSize(), "only the cached instance is reweighed");
+    }
+
+    @Test
+    void reweighEvictsWhenTheValueGrows() {
+        FrequencyCache<String, AtomicInteger> cache = new FrequencyCache<>(100, 0, AtomicInteger::get);
+        AtomicInteger grown = new AtomicInteger(1);
+        cache.put("a", grown);
+        for (int i = 0; i < 9; i++) {
+            cache.put("b" + i, new AtomicInteger(10));
+        }
+        grown.set(20);
+        cache.reweigh("a", grown);
+        assertTrue(cache.weightedSize() <= 100);
+    }
+
+    @Test
+    void invalidationOnlyFailsLoadsOfThatKey() {
+        FrequencyCache<String, Integer> cache = new FrequencyCache<>(100, 0, Integer::intValue);
+        long stampA = cache.stamp("a");
+        long stampB = cache.stamp("b");
+        cache.invalidate("b");
+        assertTrue(cache.putIfUnchanged("a", 1, stampA));
+        assertFalse(cache.putIfUnchanged("b", 1, stampB));
+        assertNull(cache.peek("b"));
+
+        long stampC = cache.stamp("c");
+        assertTrue(cache.putIfAbsent("c", 1, stampC));
+        assertFalse(cache.putIfAbsent("c", 2, stampC), "already present");
+        assertEquals(Integer.valueOf(1), cache.peek("c"));
+    }
+
+    @Test
+    void invalidateAllFailsEveryLoad() {
+        FrequencyCache<String, Integer> cache = new FrequencyCache<>(100, 0, Integer::intValue);
+        long stamp = cache.stamp("a");
+        cache.invalidateAll();
+        assertFalse(cache.putIfAbsent("a", 1, stamp));
+        assertTrue(cache.putIfAbsent("a", 1, cache.stamp("a")));
+    }
+}